@@ -0,0 +1,183 @@
+package io.mflo.rxjava_sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model adaptive window sizing for a <code>Query</code> that retrieves all rows
+ *
+ * <p>An Adaptive is passed to <code>Query.adaptive</code>. After each window,
+ * the size of the next is tuned so that a window takes about the target
+ * latency, counting both the time spent in the database and the time the
+ * subscriber spends consuming rows. The size is also capped so that a window
+ * holds no more than the maximum bytes, as measured from the first rows of
+ * the last window, and always stays within the configured bounds. Large
+ * objects are not read to be measured, and count at their declared size. To avoid oscillation, each step moves halfway to the
+ * ideal size and at most doubles it.</p>
+ *
+ * <p>The sizes chosen are exposed as metrics. An Adaptive may be shared by
+ * several Queries, in which case its metrics are aggregated.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Adaptive {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Adaptive.class);
+
+  // private state
+  private final int min;
+  private final int max;
+  private long windows = 0;
+  private long rows = 0;
+  private int lastSize = 0;
+  private long lastMillis = 0;
+  private int smallest = Integer.MAX_VALUE;
+  private int largest = 0;
+
+  // state accumulated by fluent API
+  private long maxBytes = 16 << 20;
+  private long targetMillis = 250;
+
+  /**
+   * Construct an <code>Adaptive</code> within bounds
+   *
+   * @param   min smallest window size
+   * @param   max largest window size
+   */
+  public Adaptive(int min,
+                  int max) {
+    this.min = Math.max(1, min);
+    this.max = Math.max(this.min, max);
+  }
+
+  /**
+   * Access the average window size chosen
+   *
+   * @return  average rows per window
+   */
+  public synchronized double getAverageSize() {
+    return (windows > 0)? (double)rows / windows : 0;
+  }
+
+  /**
+   * Access the largest window size chosen
+   *
+   * @return  rows
+   */
+  public synchronized int getLargestSize() {
+    return largest;
+  }
+
+  /**
+   * Access the latency of the last window, including consumption
+   *
+   * @return  milliseconds
+   */
+  public synchronized long getLastMillis() {
+    return lastMillis;
+  }
+
+  /**
+   * Access the size of the last window
+   *
+   * @return  rows
+   */
+  public synchronized int getLastSize() {
+    return lastSize;
+  }
+
+  /**
+   * Access the smallest window size chosen
+   *
+   * @return  rows
+   */
+  public synchronized int getSmallestSize() {
+    return (windows > 0)? smallest : 0;
+  }
+
+  /**
+   * Access the number of windows retrieved
+   *
+   * @return  count
+   */
+  public synchronized long getWindows() {
+    return windows;
+  }
+
+  /**
+   * Fluent API to configure the maximum estimated bytes per window. If
+   * <code>maxBytes</code> is not called, windows are capped at 16MB.
+   *
+   * @param   maxBytes estimated bytes
+   *
+   * @return  this Adaptive
+   */
+  public Adaptive maxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the target latency per window. If
+   * <code>target</code> is not called, the target is 250ms.
+   *
+   * @param   targetMillis milliseconds
+   *
+   * @return  this Adaptive
+   */
+  public Adaptive target(long targetMillis) {
+    this.targetMillis = targetMillis;
+    return this;
+  }
+
+  /**
+   * Clamp an initial window size to the bounds
+   *
+   * @param   size requested by <code>limit</code>
+   *
+   * @return  size
+   */
+  int first(int size) {
+    return Math.min(max, Math.max(min, size));
+  }
+
+  /**
+   * Record a window and choose the size of the next
+   *
+   * @param   size of this window
+   * @param   count of rows retrieved
+   * @param   dbNanos time spent in the database and driver
+   * @param   consumerNanos time spent by the subscriber
+   * @param   bytesPerRow measured size of one row
+   *
+   * @return  size of next window
+   */
+  synchronized int next(int size,
+                        int count,
+                        long dbNanos,
+                        long consumerNanos,
+                        long bytesPerRow) {
+    long elapsed = dbNanos + consumerNanos;
+    windows++;
+    rows += size;
+    lastSize = size;
+    lastMillis = elapsed / 1000000;
+    smallest = Math.min(smallest, size);
+    largest = Math.max(largest, size);
+    if (count == 0)
+      return size;
+    double nanosPerRow = Math.max(1.0, (double)elapsed / count);
+    double ideal = (targetMillis * 1e6) / nanosPerRow;
+    if (bytesPerRow > 0)
+      ideal = Math.min(ideal, (double)maxBytes / bytesPerRow);
+    double stepped = Math.min(size * 2.0, (size + ideal) / 2);
+    int chosen = (int)Math.min(max, Math.max(min, Math.round(stepped)));
+    if (log.isDebugEnabled())
+      log.debug("Window of " + size + " took " + lastMillis + "ms; next " + chosen);
+    return chosen;
+  }
+
+}
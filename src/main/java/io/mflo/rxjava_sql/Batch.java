@@ -1,6 +1,17 @@
 package io.mflo.rxjava_sql;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -17,8 +28,30 @@ import org.slf4j.LoggerFactory;
  * <p>A Batch is created by the <code>SQL.batch</code> methods.
  * A fluent API configures the Batch until it is ready to {@link #execute}.</p>
  *
- * <p><b>Note:</b> only the <code>execute()</code> method is currently
- * defined for this class.</p>
+ * <p>By default, statements are executed one after another on one connection.
+ * In {@link #parallel} mode, the statements are first analyzed by the table
+ * they touch. Statements on the same table, including DDL like
+ * <code>CREATE TABLE</code> or <code>DROP TABLE</code>, stay in order on one
+ * connection, while statements on different tables run at the same time on
+ * separate connections. Any statement that can't be attributed to exactly one
+ * table, like <code>INSERT ... SELECT</code> or a foreign key, is a barrier:
+ * everything before it completes, it runs on its own, and only then does
+ * anything after it start.</p>
+ *
+ * <p>Tables related by a foreign key declared anywhere in the Batch share one
+ * lane, so that a child row is never inserted before its parent. Foreign keys
+ * that already exist in the database can't be seen, so a Batch that depends
+ * on them should not run in parallel.</p>
+ *
+ * <p>Statements that change the session, like <code>SET</code>,
+ * <code>USE</code>, <code>LOCK TABLES</code> or
+ * <code>CREATE TEMPORARY TABLE</code>, only affect the connection they run on,
+ * and the body of a trigger may touch any table. A Batch that contains one of
+ * these, a <code>CREATE TRIGGER</code>, or a statement whose table name or
+ * referenced table can't be parsed, runs serially on one connection even in
+ * parallel mode.</p>
+ *
+ * <p>When the <code>SQL</code> is sharded, a Batch is executed on every shard.</p>
  *
  * @author      http://mflo.io
  * @version     0.0.1
@@ -29,9 +62,42 @@ public final class Batch {
   // logger for this class
   private static final Logger log = LoggerFactory.getLogger(Batch.class);
 
+  // statements attributable to a single table, up to the table name
+  private static final Pattern[] TABLE = new Pattern[] {
+    Pattern.compile("^\\s*(?:insert|replace)\\s+(?:(?:low_priority|delayed|high_priority|ignore)\\s+)*(?:into\\s+)?", Pattern.CASE_INSENSITIVE),
+    Pattern.compile("^\\s*update\\s+(?:(?:low_priority|ignore)\\s+)*", Pattern.CASE_INSENSITIVE),
+    Pattern.compile("^\\s*delete\\s+(?:(?:low_priority|quick|ignore)\\s+)*from\\s+", Pattern.CASE_INSENSITIVE),
+    Pattern.compile("^\\s*(?:create|drop|alter|truncate)\\s+table\\s+(?:if\\s+(?:not\\s+)?exists\\s+)?", Pattern.CASE_INSENSITIVE)
+  };
+
+  // table name, optionally qualified and quoted, followed by a delimiter
+  private static final String SEGMENT = "(?:`[^`]+`|\"[^\"]+\"|[\\w$]+)";
+  private static final Pattern NAME = Pattern.compile("\\G" + SEGMENT + "(?:\\." + SEGMENT + ")*(?=[\\s(;,]|$)");
+  private static final Pattern UNQUALIFIED = Pattern.compile(SEGMENT + "$");
+
+  // statements that change the session of their connection
+  private static final Pattern SESSION = Pattern.compile("^\\s*(?:set|use|lock|unlock|begin|start|commit|rollback|savepoint|release|"
+    + "declare|prepare|execute|deallocate|call|(?:create|drop)\\s+temporary)\\b", Pattern.CASE_INSENSITIVE);
+
+  // statements that create a trigger, whose body may touch any table
+  private static final Pattern TRIGGER = Pattern.compile("^\\s*create\\s+(?:or\\s+replace\\s+)?(?:definer\\s*=\\s*\\S+\\s+)?trigger\\b",
+    Pattern.CASE_INSENSITIVE);
+
+  // foreign key references, up to the table name
+  private static final Pattern REFERENCES = Pattern.compile("\\breferences\\b\\s*", Pattern.CASE_INSENSITIVE);
+
+  // words that mean a statement touches other tables
+  private static final Pattern CROSS = Pattern.compile("\\b(?:select|join|references|foreign|like|using)\\b", Pattern.CASE_INSENSITIVE);
+
+  // string literals, which are ignored when looking for other tables
+  private static final Pattern LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+
   // private state
   private final List<String> sqls;
-  private final DataSource ds;
+  private final List<DataSource> dss;
+
+  // state accumulated by fluent API
+  private int connections = 1;
 
   /**
    * Private ctor: use <code>SQL.batch</code>
@@ -44,8 +110,21 @@ public final class Batch {
    */
   protected Batch(List<String> sqls,
                   DataSource ds) {
+    this(sqls, Collections.singletonList(ds));
+  }
+
+  /**
+   * Private ctor: use <code>SQL.batch</code>
+   *
+   * @param   sqls list of SQL statements
+   * @param   dss data sources, each of which executes every statement
+   *
+   * @see     SQL#batch(java.util.List) to construct from a list of SQL statements
+   */
+  protected Batch(List<String> sqls,
+                  List<DataSource> dss) {
     this.sqls = sqls;
-    this.ds = ds;
+    this.dss = dss;
   }
 
   /**
@@ -53,19 +132,280 @@ public final class Batch {
    *
    * @return  count number of rows affected
    *
-   * @throws  SQLException when any SQL statement fails
+   * @throws  SQLException when any SQL statement fails; in parallel mode, the
+   *          failures of every statement that ran at the same time are chained
+   *          by <code>getNextException</code>
    */
   public int execute() throws SQLException {
     int count = 0;
-    try (Connection connection = ds.getConnection()) {
-      for (String sql : sqls) {
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-          log.debug(stmt.toString());
-          count += stmt.executeUpdate();
+    for (DataSource ds : dss) {
+      if (connections > 1)
+        count += execute(ds);
+      else {
+        try (Connection connection = ds.getConnection()) {
+          for (int i = 0; i < sqls.size(); i++)
+            count += execute(connection, i);
         }
       }
     }
     return count;
   }
 
+  /*
+   * Execute this <code>Batch</code> of SQL against one data source in parallel
+   *
+   * @param   ds data source
+   *
+   * @return  count number of rows affected
+   *
+   * @throws  SQLException when any SQL statement fails
+   */
+  private int execute(DataSource ds) throws SQLException {
+    int count = 0;
+    ExecutorService executor = Executors.newFixedThreadPool(connections);
+    try {
+      for (List<List<Integer>> stage : plan(sqls)) {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (List<Integer> lane : stage) {
+          futures.add(executor.submit(() -> {
+              int affected = 0;
+              try (Connection connection = ds.getConnection()) {
+                for (int i : lane)
+                  affected += execute(connection, i);
+              }
+              return affected;
+            }));
+        }
+        SQLException failure = null;
+        for (Future<Integer> future : futures) {
+          try {
+            count += future.get();
+          }
+          catch (ExecutionException e) {
+            SQLException cause = (e.getCause() instanceof SQLException)?
+              (SQLException)e.getCause() : new SQLException(e.getCause());
+            if (failure == null)
+              failure = cause;
+            else failure.setNextException(cause);
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while executing batch", e);
+          }
+        }
+        if (failure != null)
+          throw failure;
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    return count;
+  }
+
+  /*
+   * Execute one statement of this <code>Batch</code>
+   *
+   * @param   connection
+   * @param   index of statement
+   *
+   * @return  count number of rows affected
+   *
+   * @throws  SQLException identifying the statement that failed
+   */
+  private int execute(Connection connection,
+                      int index) throws SQLException {
+    String sql = sqls.get(index);
+    try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+      log.debug(stmt.toString());
+      return stmt.executeUpdate();
+    }
+    catch (SQLException e) {
+      throw new SQLException("Statement " + (index + 1) + " failed [" + sql + "]: " + e.getMessage(),
+                             e.getSQLState(), e.getErrorCode(), e);
+    }
+  }
+
+  /**
+   * Fluent API to configure Batch to execute independent statements in
+   * parallel. If <code>parallel</code> is not called, statements are executed
+   * one after another on one connection.
+   *
+   * @param   connections maximum number of connections used at once
+   *
+   * @return  this Batch
+   */
+  public Batch parallel(int connections) {
+    this.connections = Math.max(1, connections);
+    return this;
+  }
+
+  /**
+   * Tests if a statement forces its batch to run serially on one connection:
+   * it changes the session, creates a trigger, or its table name can't be parsed
+   *
+   * @param   sql statement
+   *
+   * @return  true or false as appropriate
+   */
+  static boolean isSerial(String sql) {
+    if (SESSION.matcher(sql).find() || TRIGGER.matcher(sql).find())
+      return true;
+    for (Pattern pattern : TABLE) {
+      Matcher matcher = pattern.matcher(sql);
+      if (matcher.find())
+        return !NAME.matcher(sql).region(matcher.end(), sql.length()).find();
+    }
+    return false;
+  }
+
+  /**
+   * Plan the parallel execution of a list of statements. Each stage completes
+   * before the next starts. Within a stage, each lane is the statements on one
+   * table, or on tables related by a foreign key, in order; a barrier is a
+   * stage of its own with a single lane. If any statement is serial, or a
+   * foreign key can't be parsed, the plan is one lane of every statement.
+   *
+   * @param   sqls list of SQL statements
+   *
+   * @return  stages of lanes of statement indices
+   */
+  static List<List<List<Integer>>> plan(List<String> sqls) {
+    List<List<List<Integer>>> stages = new ArrayList<>();
+    Map<String,List<Integer>> lanes = new LinkedHashMap<>();
+    for (int i = 0; i < sqls.size(); i++) {
+      if (isSerial(sqls.get(i))) {
+        log.debug("Statement " + (i + 1) + " is serial; executing batch on one connection [" + sqls.get(i) + "]");
+        return serial(sqls);
+      }
+    }
+    Map<String,String> related = new HashMap<>();
+    for (int i = 0; i < sqls.size(); i++) {
+      if (!relate(sqls.get(i), related)) {
+        log.debug("Statement " + (i + 1) + " has an unparseable foreign key; executing batch on one connection [" + sqls.get(i) + "]");
+        return serial(sqls);
+      }
+    }
+    for (int i = 0; i < sqls.size(); i++) {
+      String table = tableOf(sqls.get(i));
+      if (table != null) {
+        lanes.computeIfAbsent(root(related, table), (k) -> new ArrayList<>()).add(i);
+        continue;
+      }
+      if (!lanes.isEmpty()) {
+        stages.add(new ArrayList<>(lanes.values()));
+        lanes.clear();
+      }
+      stages.add(Collections.singletonList(Collections.singletonList(i)));
+    }
+    if (!lanes.isEmpty())
+      stages.add(new ArrayList<>(lanes.values()));
+    return stages;
+  }
+
+  /*
+   * Plan the serial execution of a list of statements
+   *
+   * @param   sqls list of SQL statements
+   *
+   * @return  one stage of one lane of every statement
+   */
+  private static List<List<List<Integer>>> serial(List<String> sqls) {
+    List<Integer> all = new ArrayList<>();
+    for (int j = 0; j < sqls.size(); j++)
+      all.add(j);
+    return Collections.singletonList(Collections.singletonList(all));
+  }
+
+  /*
+   * Relate the table of a statement to the tables its foreign keys reference
+   *
+   * @param   sql statement
+   * @param   related parent of each table, towards the root of its group
+   *
+   * @return  false if a foreign key's tables can't be parsed
+   */
+  private static boolean relate(String sql,
+                                Map<String,String> related) {
+    String unquoted = LITERAL.matcher(sql).replaceAll("''");
+    Matcher references = REFERENCES.matcher(unquoted);
+    String owner = null;
+    while (references.find()) {
+      if (owner == null) {
+        for (Pattern pattern : TABLE) {
+          Matcher matcher = pattern.matcher(unquoted);
+          if (matcher.find()) {
+            owner = nameAt(unquoted, matcher.end());
+            break;
+          }
+        }
+        if (owner == null)
+          return false;
+      }
+      String referenced = nameAt(unquoted, references.end());
+      if (referenced == null)
+        return false;
+      String a = root(related, owner);
+      String b = root(related, referenced);
+      if (!a.equals(b))
+        related.put(a, b);
+    }
+    return true;
+  }
+
+  /*
+   * Find the root of the group of tables related to a table
+   *
+   * @param   related parent of each table, towards the root of its group
+   * @param   table
+   *
+   * @return  root table
+   */
+  private static String root(Map<String,String> related,
+                             String table) {
+    for (String parent; (parent = related.get(table)) != null; )
+      table = parent;
+    return table;
+  }
+
+  /**
+   * Find the one table a statement touches
+   *
+   * @param   sql statement
+   *
+   * @return  table name, unqualified and normalized, or null if the statement
+   *          is a barrier
+   */
+  static String tableOf(String sql) {
+    for (Pattern pattern : TABLE) {
+      Matcher matcher = pattern.matcher(sql);
+      if (matcher.find()) {
+        Matcher name = NAME.matcher(sql).region(matcher.end(), sql.length());
+        if (!name.find() || sql.substring(name.end()).trim().startsWith(",")
+            || CROSS.matcher(LITERAL.matcher(sql).replaceAll("''")).find())
+          return null;
+        return nameAt(sql, matcher.end());
+      }
+    }
+    return null;
+  }
+
+  /*
+   * Parse the table name at a position of a statement
+   *
+   * @param   sql statement
+   * @param   start of the name
+   *
+   * @return  table name, unqualified and normalized, or null if there is none
+   */
+  private static String nameAt(String sql,
+                               int start) {
+    Matcher name = NAME.matcher(sql).region(start, sql.length());
+    if (!name.find())
+      return null;
+    Matcher unqualified = UNQUALIFIED.matcher(name.group());
+    unqualified.find();
+    return unqualified.group().replaceAll("^[`\"]|[`\"]$", "").toLowerCase();
+  }
+
 }
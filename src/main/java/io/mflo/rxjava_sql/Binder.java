@@ -0,0 +1,25 @@
+package io.mflo.rxjava_sql;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Bind the parameters of a statement, so that they can be bound again later,
+ * on another statement or another connection
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+interface Binder {
+
+  /**
+   * Bind parameters to a statement
+   *
+   * @param   stmt prepared statement
+   *
+   * @throws  SQLException when binding fails
+   */
+  void bind(PreparedStatement stmt) throws SQLException;
+
+}
@@ -0,0 +1,321 @@
+package io.mflo.rxjava_sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model admission control for one category of database work
+ *
+ * <p>A Bulkhead is installed for a category by <code>SQL.bulkhead</code>, and
+ * Queries and Updates are assigned to a category by their
+ * <code>category</code> method. At most <code>limit</code> of them hold a
+ * connection at once; the rest wait in a bounded queue. A caller is shed with
+ * an <code>SQLTransientConnectionException</code> when the queue is full, when
+ * its wait would run past its deadline, or as soon as it becomes clear that it
+ * would: the expected wait is estimated from the queue depth, the limit and
+ * the average time a connection is held. The deadline is the maximum wait,
+ * or the query timeout if that is shorter.</p>
+ *
+ * <p>Optionally, the limit adapts to observed latency by AIMD: it grows by one
+ * after a limit's worth of statements that executed within the target
+ * latency, and shrinks by a tenth whenever one took longer, always staying
+ * within bounds. Latency is the time a statement spends in its
+ * <code>execute</code> method, so a slow subscriber reading a streamed
+ * result does not shrink the limit of its category.</p>
+ *
+ * <p>Admission is re-entrant: a thread that already holds a connection from
+ * a Bulkhead is admitted again at once, even beyond the limit, so that a
+ * Query or Update run from within the subscriber of another in the same
+ * category can't wait on itself. The nested connections share one admission
+ * token with the first, which ends when all of them are closed, on whichever
+ * thread closes them.</p>
+ *
+ * <p>Active, queued, admitted and rejected counts and the current limit are
+ * exposed as metrics.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Bulkhead {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Bulkhead.class);
+
+  /**
+   * Category of Queries and Updates that don't call <code>category</code>
+   */
+  public static final String DEFAULT = "default";
+
+  // private state
+  private double limit;
+  private int active = 0;
+  private int queued = 0;
+  private long admitted = 0;
+  private long rejected = 0;
+  private double averageNanos = 0;
+  private int successes = 0;
+  private final ThreadLocal<Admission> admissions = new ThreadLocal<>();
+
+  // state accumulated by fluent API
+  private int maxLimit = 0;
+  private long maxWaitMillis = 1000;
+  private int minLimit = 0;
+  private int queue = 100;
+  private long targetMillis = 0;
+
+  /**
+   * Construct a <code>Bulkhead</code> with a concurrency limit
+   *
+   * @param   limit maximum Queries and Updates holding a connection at once
+   */
+  public Bulkhead(int limit) {
+    this.limit = Math.max(1, limit);
+  }
+
+  /**
+   * Fluent API to configure Bulkhead to adapt its limit to observed latency.
+   * If <code>adaptive</code> is not called, the limit is fixed.
+   *
+   * @param   min smallest limit
+   * @param   max largest limit
+   * @param   targetMillis latency above which the limit shrinks
+   *
+   * @return  this Bulkhead
+   */
+  public Bulkhead adaptive(int min,
+                           int max,
+                           long targetMillis) {
+    this.minLimit = Math.max(1, min);
+    this.maxLimit = Math.max(minLimit, max);
+    this.targetMillis = targetMillis;
+    synchronized (this) {
+      limit = Math.min(maxLimit, Math.max(minLimit, limit));
+    }
+    return this;
+  }
+
+  /**
+   * Access the number of Queries and Updates holding a connection
+   *
+   * @return  count
+   */
+  public synchronized int getActive() {
+    return active;
+  }
+
+  /**
+   * Access the number of Queries and Updates admitted
+   *
+   * @return  count
+   */
+  public synchronized long getAdmitted() {
+    return admitted;
+  }
+
+  /**
+   * Access the current concurrency limit
+   *
+   * @return  limit
+   */
+  public synchronized int getLimit() {
+    return (int)limit;
+  }
+
+  /**
+   * Access the number of Queries and Updates waiting for admission
+   *
+   * @return  queue depth
+   */
+  public synchronized int getQueued() {
+    return queued;
+  }
+
+  /**
+   * Access the number of Queries and Updates shed
+   *
+   * @return  count
+   */
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  /**
+   * Fluent API to configure the longest a Query or Update waits for admission.
+   * If <code>maxWait</code> is not called, the maximum wait is one second.
+   *
+   * @param   maxWait maximum wait
+   * @param   unit of maxWait
+   *
+   * @return  this Bulkhead
+   */
+  public Bulkhead maxWait(long maxWait,
+                          TimeUnit unit) {
+    this.maxWaitMillis = unit.toMillis(maxWait);
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the number of Queries and Updates that can wait
+   * for admission. If <code>queue</code> is not called, up to 100 can wait.
+   *
+   * @param   queue maximum queue depth; zero to shed whenever the limit is reached
+   *
+   * @return  this Bulkhead
+   */
+  public Bulkhead queue(int queue) {
+    this.queue = Math.max(0, queue);
+    return this;
+  }
+
+  /**
+   * Admit the caller, then get a connection that releases its admission when
+   * it is closed and reports how long its statements take to execute
+   *
+   * @param   ds data source
+   * @param   timeoutMillis query timeout, or zero for none
+   *
+   * @return  connection
+   *
+   * @throws  SQLTransientConnectionException when the caller is shed
+   * @throws  SQLException when the connection can't be got
+   */
+  Connection getConnection(DataSource ds,
+                           long timeoutMillis) throws SQLException {
+    long wait = (timeoutMillis > 0)? Math.min(maxWaitMillis, timeoutMillis) : maxWaitMillis;
+    Admission admission = acquire(admissions.get(), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait));
+    admissions.set(admission);
+    long start = System.nanoTime();
+    try {
+      return Connections.onClose(Connections.onExecute(ds.getConnection(), this::observe),
+                                 () -> release(admission, System.nanoTime() - start));
+    }
+    catch (SQLException | RuntimeException e) {
+      release(admission, -1);
+      throw e;
+    }
+  }
+
+  /*
+   * Wait for admission, unless the caller already holds one
+   *
+   * @param   held last admission of the calling thread, or null
+   * @param   deadline by <code>System.nanoTime</code>
+   *
+   * @return  admission, shared with the caller's if it is still held
+   *
+   * @throws  SQLTransientConnectionException when the caller is shed
+   */
+  private synchronized Admission acquire(Admission held,
+                                         long deadline) throws SQLException {
+    if ((held != null) && (held.connections > 0))
+      return admit(held);
+    if ((active < (int)limit) && (queued == 0))
+      return admit(new Admission());
+    if (queued >= queue)
+      throw reject("queue full");
+    if (averageNanos * (queued + 1) / limit > deadline - System.nanoTime())
+      throw reject("expected wait exceeds deadline");
+    queued++;
+    try {
+      while (active >= (int)limit) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+          throw reject("deadline exceeded");
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException("Interrupted while waiting for admission", e);
+    }
+    finally {
+      queued--;
+    }
+    return admit(new Admission());
+  }
+
+  /*
+   * Count an admission
+   *
+   * @param   admission token of the caller
+   *
+   * @return  admission
+   */
+  private Admission admit(Admission admission) {
+    active++;
+    admitted++;
+    admission.connections++;
+    return admission;
+  }
+
+  /*
+   * Adapt the limit to the time a statement spent executing
+   *
+   * @param   nanos execution time
+   */
+  private synchronized void observe(long nanos) {
+    if (targetMillis <= 0)
+      return;
+    if (nanos > TimeUnit.MILLISECONDS.toNanos(targetMillis)) {
+      limit = Math.max(minLimit, limit * 0.9);
+      successes = 0;
+    }
+    else if (++successes >= (int)limit) {
+      limit = Math.min(maxLimit, limit + 1);
+      successes = 0;
+    }
+    notifyAll();
+  }
+
+  /*
+   * Shed a caller
+   *
+   * @param   reason for metrics and logging
+   *
+   * @return  exception to be thrown
+   */
+  private SQLException reject(String reason) {
+    rejected++;
+    log.debug("Bulkhead rejected caller: " + reason);
+    return new SQLTransientConnectionException("Bulkhead rejected caller: " + reason
+                                               + " (limit " + (int)limit + ", active " + active + ", queued " + queued + ")");
+  }
+
+  /*
+   * Release an admission, recording how long the connection was held so as
+   * to estimate the wait for admission
+   *
+   * @param   admission token of the caller
+   * @param   nanos connection hold time, or negative if no connection was got
+   */
+  private synchronized void release(Admission admission,
+                                    long nanos) {
+    active--;
+    if ((--admission.connections == 0) && (admissions.get() == admission))
+      admissions.remove();
+    if (nanos >= 0)
+      averageNanos = (averageNanos == 0)? nanos : (averageNanos * 0.9) + (nanos * 0.1);
+    notifyAll();
+  }
+
+  /**
+   * Admission token shared by a caller's nested connections
+   */
+
+  private static final class Admission {
+
+    // private state, guarded by the Bulkhead
+    private int connections = 0;
+
+  }
+
+}
@@ -0,0 +1,695 @@
+package io.mflo.rxjava_sql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model the complete results of an SQL query in columnar form
+ *
+ * <p>Columns are created by the <code>Query.columns</code> method. Rather than
+ * one map per row, each column is stored as a single array: integral and
+ * floating point columns as primitive <code>int</code>, <code>long</code> or
+ * <code>double</code> arrays, strings as dictionary codes and everything else
+ * as objects. Nulls are recorded in a bitmap per column.</p>
+ *
+ * <p>Columns can be scanned as primitive streams, or individual rows can be
+ * accessed as a <code>Tuple</code> through {@link #row}.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Columns {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Columns.class);
+
+  // initial capacity of each column
+  private static final int INITIAL_CAPACITY = 1024;
+
+  // private state
+  private final List<String> names = new ArrayList<>();
+  private final Map<String,Integer> indexByName = new HashMap<>();
+  private final List<Column> columns = new ArrayList<>();
+  private int size = 0;
+
+  /**
+   * Private ctor: use <code>Query.columns</code>
+   */
+  Columns() { }
+
+  /**
+   * Private ctor: use <code>Query.columns</code>
+   *
+   * @param   rsMetaData describes the columns
+   *
+   * @throws  SQLException if the metadata can't be read
+   */
+  Columns(ResultSetMetaData rsMetaData) throws SQLException {
+    for (int i = 1; i <= rsMetaData.getColumnCount(); i++) {
+      String identifier = rsMetaData.getColumnLabel(i);
+      if (identifier == null)
+        identifier = rsMetaData.getColumnName(i);
+      add(identifier).init(Kind.of(rsMetaData.getColumnClassName(i)));
+    }
+  }
+
+  /**
+   * Append the current row of a <code>ResultSet</code>
+   *
+   * @param   rs positioned on a row
+   *
+   * @throws  SQLException if the row can't be read
+   */
+  void append(ResultSet rs) throws SQLException {
+    for (int i = 0; i < columns.size(); i++)
+      columns.get(i).append(rs, i + 1, size);
+    size++;
+  }
+
+  /**
+   * Append a <code>Result</code>. Unless the columns were described by
+   * metadata, they are those of the first Result appended. The type of each
+   * column is set by its first non-null value, and widened when a later value
+   * doesn't fit: from <code>int</code> to <code>long</code> or
+   * <code>double</code>, otherwise to objects.
+   *
+   * @param   result
+   */
+  void append(Result result) {
+    if (size == 0 && columns.isEmpty())
+      for (TupleElement<?> element : result.getElements())
+        add(element.getAlias());
+    for (int i = 0; i < columns.size(); i++)
+      columns.get(i).append(result.get(names.get(i)), size);
+    size++;
+  }
+
+  /**
+   * Release memory needed only while rows are being appended
+   */
+  void freeze() {
+    for (Column column : columns)
+      column.freeze();
+  }
+
+  /**
+   * Get a value
+   *
+   * @param   row position, relative to 0
+   * @param   column position, relative to 0
+   *
+   * @return  value, boxed as necessary
+   */
+  public Object get(int row,
+                    int column) {
+    return columns.get(column).get(check(row));
+  }
+
+  /**
+   * Get the position of a named column
+   *
+   * @param   name used in SQL query
+   *
+   * @return  column position, relative to 0
+   */
+  public int getColumn(String name) {
+    Integer index = indexByName.get(name);
+    if (index == null)
+      throw new IllegalArgumentException("Unknown name [" + name + "]");
+    return index;
+  }
+
+  /**
+   * Get a value from an <code>int</code> column; zero if null
+   *
+   * @param   row position, relative to 0
+   * @param   column position, relative to 0
+   *
+   * @return  value
+   */
+  public int getInt(int row,
+                    int column) {
+    return columns.get(column).expect(Kind.INT).ints[check(row)];
+  }
+
+  /**
+   * Get a value from a <code>long</code> column; zero if null
+   *
+   * @param   row position, relative to 0
+   * @param   column position, relative to 0
+   *
+   * @return  value
+   */
+  public long getLong(int row,
+                      int column) {
+    return columns.get(column).expect(Kind.LONG).longs[check(row)];
+  }
+
+  /**
+   * Get a value from a <code>double</code> column; zero if null
+   *
+   * @param   row position, relative to 0
+   * @param   column position, relative to 0
+   *
+   * @return  value
+   */
+  public double getDouble(int row,
+                          int column) {
+    return columns.get(column).expect(Kind.DOUBLE).doubles[check(row)];
+  }
+
+  /**
+   * Access the column names
+   *
+   * @return  names, in column order
+   */
+  public List<String> getNames() {
+    return Collections.unmodifiableList(names);
+  }
+
+  /**
+   * Access the null bitmap of a column
+   *
+   * @param   column position, relative to 0
+   *
+   * @return  bit set for each null row
+   */
+  public BitSet getNulls(int column) {
+    return (BitSet)columns.get(column).nulls.clone();
+  }
+
+  /**
+   * Scan a <code>double</code> column; nulls appear as zero
+   *
+   * @param   column position, relative to 0
+   *
+   * @return  stream of values, in row order
+   */
+  public DoubleStream doubles(int column) {
+    return Arrays.stream(columns.get(column).expect(Kind.DOUBLE).doubles, 0, size);
+  }
+
+  /**
+   * Scan an <code>int</code> column; nulls appear as zero
+   *
+   * @param   column position, relative to 0
+   *
+   * @return  stream of values, in row order
+   */
+  public IntStream ints(int column) {
+    return Arrays.stream(columns.get(column).expect(Kind.INT).ints, 0, size);
+  }
+
+  /**
+   * Tests if a value is null
+   *
+   * @param   row position, relative to 0
+   * @param   column position, relative to 0
+   *
+   * @return  true or false as appropriate
+   */
+  public boolean isNull(int row,
+                        int column) {
+    return columns.get(column).nulls.get(check(row));
+  }
+
+  /**
+   * Scan a <code>long</code> column; nulls appear as zero
+   *
+   * @param   column position, relative to 0
+   *
+   * @return  stream of values, in row order
+   */
+  public LongStream longs(int column) {
+    return Arrays.stream(columns.get(column).expect(Kind.LONG).longs, 0, size);
+  }
+
+  /**
+   * Access one row as a <code>Tuple</code>
+   *
+   * @param   row position, relative to 0
+   *
+   * @return  view of row
+   */
+  public Tuple row(int row) {
+    return new Row(check(row));
+  }
+
+  /**
+   * Count the rows
+   *
+   * @return  number of rows
+   */
+  public int size() {
+    return size;
+  }
+
+  /*
+   * Add an empty column
+   *
+   * @param   name
+   *
+   * @return  column
+   */
+  private Column add(String name) {
+    Column column = new Column();
+    indexByName.put(name, names.size());
+    names.add(name);
+    columns.add(column);
+    return column;
+  }
+
+  /*
+   * Check a row position
+   *
+   * @param   row
+   *
+   * @return  row
+   */
+  private int check(int row) {
+    if (row < 0 || row >= size)
+      throw new IllegalArgumentException("Row out-of-range [" + row + "]");
+    return row;
+  }
+
+  /**
+   * How a column is stored
+   */
+
+  private enum Kind {
+
+    UNKNOWN, INT, LONG, DOUBLE, STRING, OBJECT;
+
+    /**
+     * Choose the storage for a Java class name, as reported by JDBC
+     *
+     * @param   className
+     *
+     * @return  kind
+     */
+    private static Kind of(String className) {
+      if (className == null)
+        return OBJECT;
+      switch (className) {
+        case "java.lang.Byte":
+        case "java.lang.Short":
+        case "java.lang.Integer":
+          return INT;
+        case "java.lang.Long":
+          return LONG;
+        case "java.lang.Float":
+        case "java.lang.Double":
+          return DOUBLE;
+        case "java.lang.String":
+          return STRING;
+        default:
+          return OBJECT;
+      }
+    }
+
+    /**
+     * Choose the storage for a value
+     *
+     * @param   value
+     *
+     * @return  kind
+     */
+    private static Kind of(Object value) {
+      return of(value.getClass().getName());
+    }
+
+    /**
+     * Choose the storage that fits the values of this kind and another
+     *
+     * @param   other kind
+     *
+     * @return  kind
+     */
+    private Kind widen(Kind other) {
+      if (this == other)
+        return this;
+      if ((this == INT && other == LONG) || (this == LONG && other == INT))
+        return LONG;
+      if ((this == INT && other == DOUBLE) || (this == DOUBLE && other == INT))
+        return DOUBLE;
+      return OBJECT;
+    }
+
+  }
+
+  /**
+   * One column of values
+   */
+
+  private static class Column {
+
+    // private state
+    private Kind kind = Kind.UNKNOWN;
+    private final BitSet nulls = new BitSet();
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private Object[] objects;
+    private List<String> dictionary;
+    private Map<String,Integer> codes;
+
+    /**
+     * Append the value of a column from the current row of a <code>ResultSet</code>
+     *
+     * @param   rs
+     * @param   index of column, relative to 1
+     * @param   row position, relative to 0
+     *
+     * @throws  SQLException
+     */
+    private void append(ResultSet rs,
+                        int index,
+                        int row) throws SQLException {
+      grow(row);
+      switch (kind) {
+        case INT:
+          ints[row] = rs.getInt(index);
+          break;
+        case LONG:
+          longs[row] = rs.getLong(index);
+          break;
+        case DOUBLE:
+          doubles[row] = rs.getDouble(index);
+          break;
+        case STRING:
+          String value = rs.getString(index);
+          if (value != null)
+            ints[row] = encode(value);
+          break;
+        default:
+          objects[row] = rs.getObject(index);
+          break;
+      }
+      if (rs.wasNull())
+        nulls.set(row);
+    }
+
+    /**
+     * Append a value
+     *
+     * @param   value
+     * @param   row position, relative to 0
+     */
+    private void append(Object value,
+                        int row) {
+      if (value == null) {
+        nulls.set(row);
+        return;
+      }
+      if (kind == Kind.UNKNOWN)
+        init(Kind.of(value), row);
+      else {
+        Kind wider = kind.widen(Kind.of(value));
+        if (wider != kind)
+          widen(wider, row);
+      }
+      grow(row);
+      switch (kind) {
+        case INT:
+          ints[row] = ((Number)value).intValue();
+          break;
+        case LONG:
+          longs[row] = ((Number)value).longValue();
+          break;
+        case DOUBLE:
+          doubles[row] = ((Number)value).doubleValue();
+          break;
+        case STRING:
+          ints[row] = encode((String)value);
+          break;
+        default:
+          objects[row] = value;
+          break;
+      }
+    }
+
+    /**
+     * Check the storage of this column
+     *
+     * @param   expected kind
+     *
+     * @return  this column
+     */
+    private Column expect(Kind expected) {
+      if (kind != expected)
+        throw new IllegalArgumentException("Column is not of kind [" + expected + "]");
+      return this;
+    }
+
+    /**
+     * Release the dictionary lookup, which is needed only while appending
+     */
+    private void freeze() {
+      codes = null;
+    }
+
+    /**
+     * Get a value, boxed as necessary
+     *
+     * @param   row position, relative to 0
+     *
+     * @return  value
+     */
+    private Object get(int row) {
+      if (nulls.get(row))
+        return null;
+      switch (kind) {
+        case INT:
+          return ints[row];
+        case LONG:
+          return longs[row];
+        case DOUBLE:
+          return doubles[row];
+        case STRING:
+          return dictionary.get(ints[row]);
+        default:
+          return objects[row];
+      }
+    }
+
+    /**
+     * Set the storage of this column
+     *
+     * @param   kind
+     */
+    private void init(Kind kind) {
+      init(kind, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Set the storage of this column
+     *
+     * @param   kind
+     * @param   capacity initial number of rows
+     */
+    private void init(Kind kind,
+                      int capacity) {
+      this.kind = kind;
+      capacity = Math.max(capacity, INITIAL_CAPACITY);
+      switch (kind) {
+        case INT:
+          ints = new int[capacity];
+          break;
+        case LONG:
+          longs = new long[capacity];
+          break;
+        case DOUBLE:
+          doubles = new double[capacity];
+          break;
+        case STRING:
+          ints = new int[capacity];
+          dictionary = new ArrayList<>();
+          codes = new HashMap<>();
+          break;
+        default:
+          objects = new Object[capacity];
+          break;
+      }
+    }
+
+    /**
+     * Change the storage of this column to a wider kind, converting the rows
+     * already appended
+     *
+     * @param   wider kind
+     * @param   rows number of rows appended
+     */
+    private void widen(Kind wider,
+                       int rows) {
+      log.debug("Widening column from " + kind + " to " + wider);
+      int capacity = Math.max(rows + 1, INITIAL_CAPACITY);
+      switch (wider) {
+        case LONG:
+          longs = new long[capacity];
+          for (int i = 0; i < rows; i++)
+            longs[i] = ints[i];
+          break;
+        case DOUBLE:
+          doubles = new double[capacity];
+          for (int i = 0; i < rows; i++)
+            doubles[i] = ints[i];
+          break;
+        default:
+          objects = new Object[capacity];
+          for (int i = 0; i < rows; i++)
+            objects[i] = get(i);
+          longs = null;
+          doubles = null;
+          dictionary = null;
+          codes = null;
+          break;
+      }
+      ints = null;
+      kind = wider;
+    }
+
+    /**
+     * Encode a string by its position in the dictionary
+     *
+     * @param   value
+     *
+     * @return  code
+     */
+    private int encode(String value) {
+      Integer code = codes.get(value);
+      if (code == null) {
+        code = dictionary.size();
+        dictionary.add(value);
+        codes.put(value, code);
+      }
+      return code;
+    }
+
+    /**
+     * Ensure there is room for a row
+     *
+     * @param   row position, relative to 0
+     */
+    private void grow(int row) {
+      switch (kind) {
+        case INT:
+        case STRING:
+          if (row >= ints.length)
+            ints = Arrays.copyOf(ints, ints.length * 2);
+          break;
+        case LONG:
+          if (row >= longs.length)
+            longs = Arrays.copyOf(longs, longs.length * 2);
+          break;
+        case DOUBLE:
+          if (row >= doubles.length)
+            doubles = Arrays.copyOf(doubles, doubles.length * 2);
+          break;
+        case OBJECT:
+          if (row >= objects.length)
+            objects = Arrays.copyOf(objects, objects.length * 2);
+          break;
+        default:
+          break;
+      }
+    }
+
+  }
+
+  /**
+   * View of one row as a <code>Tuple</code>
+   */
+
+  private class Row implements Tuple {
+
+    // private state
+    private final int row;
+
+    /**
+     * Construct one <code>Row</code>
+     *
+     * @param   row position, relative to 0
+     */
+    private Row(int row) {
+      this.row = row;
+    }
+
+    @Override public Object get(int ordinal) {
+      if (ordinal < 1 || ordinal > columns.size())
+        throw new IllegalArgumentException("Ordinal out-of-range [" + ordinal + "]");
+      return Columns.this.get(row, ordinal - 1);
+    }
+
+    @Override public <X> X get(int ordinal,
+                               Class<X> type) {
+      Object untyped = get(ordinal);
+      if (untyped != null) {
+        if (!type.isInstance(untyped))
+          throw new IllegalArgumentException("Ordinal [" + ordinal + "] incompatible with [" + type + "]");
+      }
+      return (X)untyped;
+    }
+
+    @Override public Object get(String name) {
+      return Columns.this.get(row, getColumn(name));
+    }
+
+    @Override public <X> X get(String name,
+                               Class<X> type) {
+      Object untyped = get(name);
+      if (untyped != null) {
+        if (!type.isInstance(untyped))
+          throw new IllegalArgumentException("Name [" + name + "] incompatible with [" + type + "]");
+      }
+      return (X)untyped;
+    }
+
+    @Override public <X> X get(TupleElement<X> element) {
+      return get(element.getAlias(), element.getJavaType());
+    }
+
+    @Override public List<TupleElement<?>> getElements() {
+      List<TupleElement<?>> elements = new ArrayList<>();
+      for (int i = 0; i < names.size(); i++) {
+        Object value = Columns.this.get(row, i);
+        elements.add(new Result.Element(names.get(i), (value != null)? value.getClass() : null));
+      }
+      return elements;
+    }
+
+    @Override public Object[] toArray() {
+      Object[] values = new Object[columns.size()];
+      for (int i = 0; i < values.length; i++)
+        values[i] = Columns.this.get(row, i);
+      return values;
+    }
+
+    @Override public String toString() {
+      StringBuilder sb = new StringBuilder("{");
+      for (int i = 0; i < names.size(); i++)
+        sb.append((i > 0)? ", " : "").append(names.get(i)).append('=').append(Columns.this.get(row, i));
+      return sb.append('}').toString();
+    }
+
+  }
+
+}
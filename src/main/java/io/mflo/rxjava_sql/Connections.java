@@ -0,0 +1,169 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Helpers for tracking the lifecycle of a JDBC <code>Connection</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+final class Connections {
+
+  /**
+   * Private ctor: static helpers only
+   */
+  private Connections() { }
+
+  /**
+   * Wrap a <code>Connection</code> so that a callback is run exactly once
+   * when it is closed
+   *
+   * @param   connection to be wrapped
+   * @param   onClose callback
+   *
+   * @return  wrapped connection
+   */
+  static Connection onClose(Connection connection,
+                            Runnable onClose) {
+    AtomicBoolean closed = new AtomicBoolean(false);
+    InvocationHandler handler = (proxy, method, args) -> {
+      try {
+        return invoke(connection, method, args);
+      }
+      finally {
+        if (method.getName().equals("close") && closed.compareAndSet(false, true))
+          onClose.run();
+      }
+    };
+    return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                              new Class<?>[] { Connection.class },
+                                              handler);
+  }
+
+  /**
+   * Wrap a <code>Connection</code> so that the time each of its statements
+   * spends executing is reported, excluding the time spent reading results
+   *
+   * @param   connection to be wrapped
+   * @param   onExecute callback, given the nanoseconds spent in each
+   *          <code>execute</code> method
+   *
+   * @return  wrapped connection
+   */
+  static Connection onExecute(Connection connection,
+                              LongConsumer onExecute) {
+    return onStatement(connection, (method, result, nanos) -> onExecute.accept(nanos));
+  }
+
+  /**
+   * Wrap a <code>Connection</code> so that a callback is run after each of
+   * its statements that may have modified data: any successful batch or
+   * update, or an <code>execute</code> that returned an update count
+   *
+   * @param   connection to be wrapped
+   * @param   onWrite callback
+   *
+   * @return  wrapped connection
+   */
+  static Connection onWrite(Connection connection,
+                            Runnable onWrite) {
+    return onStatement(connection, (method, result, nanos) -> {
+        String name = method.getName();
+        if (result instanceof Throwable)
+          return;
+        if (name.endsWith("Update") || name.endsWith("Batch") || Boolean.FALSE.equals(result))
+          onWrite.run();
+      });
+  }
+
+  /*
+   * Wrap a <code>Connection</code> so that a callback is run after each
+   * <code>execute</code> method of its statements
+   *
+   * @param   connection to be wrapped
+   * @param   onExecuted callback
+   *
+   * @return  wrapped connection
+   */
+  private static Connection onStatement(Connection connection,
+                                        Executed onExecuted) {
+    InvocationHandler handler = (proxy, method, args) -> {
+      Object result = invoke(connection, method, args);
+      if (!(result instanceof Statement) || !method.getReturnType().isInterface())
+        return result;
+      Statement stmt = (Statement)result;
+      return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                    new Class<?>[] { method.getReturnType() },
+                                    (sproxy, smethod, sargs) -> {
+          if (!smethod.getName().startsWith("execute"))
+            return invoke(stmt, smethod, sargs);
+          long start = System.nanoTime();
+          try {
+            Object executed = invoke(stmt, smethod, sargs);
+            onExecuted.run(smethod, executed, System.nanoTime() - start);
+            return executed;
+          }
+          catch (Throwable e) {
+            onExecuted.run(smethod, e, System.nanoTime() - start);
+            throw e;
+          }
+        });
+    };
+    return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                              new Class<?>[] { Connection.class },
+                                              handler);
+  }
+
+  /*
+   * Invoke a method on the wrapped object, rethrowing what it throws
+   *
+   * @param   target wrapped object
+   * @param   method
+   * @param   args
+   *
+   * @return  result of the method
+   *
+   * @throws  Throwable thrown by the method
+   */
+  private static Object invoke(Object target,
+                               Method method,
+                               Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    }
+    catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Callback after a statement executes
+   */
+
+  private interface Executed {
+
+    /**
+     * Handle an execution
+     *
+     * @param   method <code>execute</code> method called
+     * @param   result of the method, or what it threw
+     * @param   nanos time spent in the method
+     */
+    void run(Method method,
+             Object result,
+             long nanos);
+
+  }
+
+}
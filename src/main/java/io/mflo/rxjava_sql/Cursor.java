@@ -0,0 +1,361 @@
+package io.mflo.rxjava_sql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model a reusable view of the current row of a Query as a Tuple
+ *
+ * <p>A Cursor is emitted by the <code>Query.cursor</code> method. The same
+ * Cursor is emitted for every row of a subscription, and reads its values
+ * straight from the live <code>ResultSet</code>, so that consuming a row
+ * allocates nothing beyond what the driver does. The primitive accessors
+ * avoid boxing altogether. When results are merged from several shards,
+ * the Cursor instead holds the values of the current row in an array that
+ * is reused from row to row.</p>
+ *
+ * <p>A Cursor is valid only during <code>onNext</code>. Use {@link #copy} to
+ * retain a row as a <code>Result</code>.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Cursor implements Tuple {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Cursor.class);
+
+  // private state
+  private ResultSet rs = null;
+  private Object[] values = null;
+  private Result.Schema schema = null;
+  private boolean valid = false;
+
+  /**
+   * Private ctor: use <code>Query.cursor</code>
+   *
+   * @see     Query#cursor
+   */
+  Cursor() { }
+
+  /**
+   * Copy the current row, so that it can be retained after <code>onNext</code>
+   *
+   * @return  Result
+   */
+  public Result copy() {
+    check();
+    Object[] values = new Object[schema.size()];
+    for (int i = 0; i < values.length; i++)
+      values[i] = value(i + 1);
+    return new Result(schema, values);
+  }
+
+  /**
+   * Get a value by ordinal
+   *
+   * @param   ordinal positon in row
+   *
+   * @return  value
+   */
+  @Override public Object get(int ordinal) {
+    check();
+    if (ordinal < 1 || ordinal > schema.size())
+      throw new IllegalArgumentException("Ordinal out-of-range [" + ordinal + "]");
+    return value(ordinal);
+  }
+
+  /**
+   * Get a value by ordinal
+   *
+   * @param   ordinal positon in row
+   * @param   type of value
+   *
+   * @return  value
+   */
+  @Override public <X> X get(int ordinal,
+                             Class<X> type) {
+    Object untyped = get(ordinal);
+    if (untyped != null) {
+      if (!type.isInstance(untyped))
+        throw new IllegalArgumentException("Ordinal [" + ordinal + "] incompatible with [" + type + "]");
+    }
+    return (X)untyped;
+  }
+
+  /**
+   * Get a value by name
+   *
+   * @param   name of value
+   *
+   * @return  value
+   */
+  @Override public Object get(String name) {
+    return get(ordinalOf(name));
+  }
+
+  /**
+   * Get a value by name
+   *
+   * @param   name of value
+   * @param   type of value
+   *
+   * @return  value
+   */
+  @Override public <X> X get(String name,
+                             Class<X> type) {
+    Object untyped = get(name);
+    if (untyped != null) {
+      if (!type.isInstance(untyped))
+        throw new IllegalArgumentException("Name [" + name + "] incompatible with [" + type + "]");
+    }
+    return (X)untyped;
+  }
+
+  /**
+   * Get a value by TupleElement
+   *
+   * @param   element of value
+   *
+   * @return  value
+   */
+  @Override public <X> X get(TupleElement<X> element) {
+    return get(element.getAlias(), element.getJavaType());
+  }
+
+  /**
+   * Get a value by ordinal as a double, without boxing
+   *
+   * @param   ordinal positon in row
+   *
+   * @return  value, or 0 if null
+   */
+  public double getDouble(int ordinal) {
+    check();
+    if (values != null) {
+      Object value = value(ordinal);
+      return (value != null)? ((Number)value).doubleValue() : 0;
+    }
+    try {
+      return rs.getDouble(ordinal);
+    }
+    catch (SQLException e) {
+      throw new IllegalStateException("Failed to read ordinal [" + ordinal + "]", e);
+    }
+  }
+
+  /**
+   * Get a value by name as a double, without boxing
+   *
+   * @param   name of value
+   *
+   * @return  value, or 0 if null
+   */
+  public double getDouble(String name) {
+    return getDouble(ordinalOf(name));
+  }
+
+  /**
+   * Get the names and types of the values in this row
+   *
+   * @return  list of TupleElement
+   */
+  @Override public List<TupleElement<?>> getElements() {
+    check();
+    List<TupleElement<?>> elements = new ArrayList<>();
+    for (int i = 0; i < schema.size(); i++) {
+      Object value = value(i + 1);
+      elements.add(new Result.Element(schema.getName(i), (value != null)? value.getClass() : null));
+    }
+    return elements;
+  }
+
+  /**
+   * Get a value by ordinal as an int, without boxing
+   *
+   * @param   ordinal positon in row
+   *
+   * @return  value, or 0 if null
+   */
+  public int getInt(int ordinal) {
+    check();
+    if (values != null) {
+      Object value = value(ordinal);
+      return (value != null)? ((Number)value).intValue() : 0;
+    }
+    try {
+      return rs.getInt(ordinal);
+    }
+    catch (SQLException e) {
+      throw new IllegalStateException("Failed to read ordinal [" + ordinal + "]", e);
+    }
+  }
+
+  /**
+   * Get a value by name as an int, without boxing
+   *
+   * @param   name of value
+   *
+   * @return  value, or 0 if null
+   */
+  public int getInt(String name) {
+    return getInt(ordinalOf(name));
+  }
+
+  /**
+   * Get a value by ordinal as a long, without boxing
+   *
+   * @param   ordinal positon in row
+   *
+   * @return  value, or 0 if null
+   */
+  public long getLong(int ordinal) {
+    check();
+    if (values != null) {
+      Object value = value(ordinal);
+      return (value != null)? ((Number)value).longValue() : 0;
+    }
+    try {
+      return rs.getLong(ordinal);
+    }
+    catch (SQLException e) {
+      throw new IllegalStateException("Failed to read ordinal [" + ordinal + "]", e);
+    }
+  }
+
+  /**
+   * Get a value by name as a long, without boxing
+   *
+   * @param   name of value
+   *
+   * @return  value, or 0 if null
+   */
+  public long getLong(String name) {
+    return getLong(ordinalOf(name));
+  }
+
+  /**
+   * Tests if a name is in this row
+   *
+   * @param   name
+   *
+   * @return  true or false as appropriate
+   */
+  public boolean has(String name) {
+    check();
+    return schema.indexOf(name) >= 0;
+  }
+
+  /**
+   * Get all values
+   *
+   * @return  array of values
+   */
+  @Override public Object[] toArray() {
+    return copy().toArray();
+  }
+
+  /**
+   * Convert this <code>Cursor</code> to a string for logging purposes
+   *
+   * @return  stringified representation of the current row
+   */
+  @Override public String toString() {
+    return valid? copy().toString() : "{}";
+  }
+
+  /**
+   * Position this <code>Cursor</code> on the current row of a <code>ResultSet</code>
+   *
+   * @param   rs positioned on a row
+   * @param   schema names of the columns of rs
+   */
+  void reset(ResultSet rs,
+             Result.Schema schema) {
+    this.rs = rs;
+    this.values = null;
+    this.schema = schema;
+    this.valid = true;
+  }
+
+  /**
+   * Position this <code>Cursor</code> on a <code>Result</code>, as when
+   * results are merged from several shards
+   *
+   * @param   result
+   */
+  void reset(Result result) {
+    if (values == null) {
+      List<TupleElement<?>> elements = result.getElements();
+      String[] names = new String[elements.size()];
+      for (int i = 0; i < names.length; i++)
+        names[i] = elements.get(i).getAlias();
+      schema = new Result.Schema(names);
+      values = new Object[names.length];
+    }
+    for (int i = 0; i < values.length; i++)
+      values[i] = result.get(schema.getName(i));
+    this.rs = null;
+    this.valid = true;
+  }
+
+  /**
+   * Invalidate this <code>Cursor</code> once <code>onNext</code> returns
+   */
+  void invalidate() {
+    this.rs = null;
+    this.valid = false;
+  }
+
+  /*
+   * Check that this <code>Cursor</code> is positioned on a row
+   */
+  private void check() {
+    if (!valid)
+      throw new IllegalStateException("Cursor read after onNext; copy it to retain it");
+  }
+
+  /*
+   * Find the ordinal of a name
+   *
+   * @param   name
+   *
+   * @return  ordinal
+   */
+  private int ordinalOf(String name) {
+    check();
+    int index = schema.indexOf(name);
+    if (index < 0)
+      throw new IllegalArgumentException("Unknown name [" + name + "]");
+    return index + 1;
+  }
+
+  /*
+   * Read a value from the current row
+   *
+   * @param   ordinal positon in row
+   *
+   * @return  value
+   */
+  private Object value(int ordinal) {
+    if (values != null)
+      return values[ordinal - 1];
+    try {
+      return rs.getObject(ordinal);
+    }
+    catch (SQLException e) {
+      throw new IllegalStateException("Failed to read ordinal [" + ordinal + "]", e);
+    }
+  }
+
+}
@@ -0,0 +1,316 @@
+package io.mflo.rxjava_sql;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.text.Collator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model the SQL and JDBC differences between databases
+ *
+ * <p>A Dialect owns pagination syntax, how to stream a large result, the
+ * bulk load strategy, the syntax of <code>EXPLAIN</code>, how identifiers are quoted
+ * and the default collation of strings. MySQL, PostgreSQL, H2 and
+ * Derby are built in.</p>
+ *
+ * <p>A Dialect is configured by <code>SQL.dialect</code>, or else chosen from
+ * the <code>DatabaseMetaData</code> of each connection. Additional dialects
+ * can be registered with <code>java.util.ServiceLoader</code>, in
+ * <code>META-INF/services/io.mflo.rxjava_sql.Dialect</code>, and are
+ * consulted before the built-in ones. When no dialect accepts a database,
+ * MySQL is assumed.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public abstract class Dialect {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Dialect.class);
+
+  /**
+   * Built-in dialects
+   */
+  public static final Dialect DERBY = new Derby();
+  public static final Dialect H2 = new H2();
+  public static final Dialect MYSQL = new MySQL();
+  public static final Dialect POSTGRESQL = new PostgreSQL();
+
+  // registered dialects, then built-in ones
+  private static final List<Dialect> DIALECTS = load();
+
+  /**
+   * Tests if this dialect applies to a database
+   *
+   * @param   productName as reported by <code>DatabaseMetaData</code>
+   *
+   * @return  true or false as appropriate
+   */
+  public abstract boolean accepts(String productName);
+
+  /**
+   * Prefix a statement so that it returns its plan
+   *
+   * @param   sql statement
+   *
+   * @return  sql to explain the statement, or null if the database can't explain
+   */
+  public String explain(String sql) {
+    return "EXPLAIN " + sql;
+  }
+
+  /**
+   * Access the default collation of strings, so that results merged
+   * client-side, as from several shards, are ordered as each database
+   * ordered them. A column with another collation is collated by its
+   * <code>OrderBy</code>.
+   *
+   * @return  collation, or null for binary order
+   *
+   * @see     OrderBy#collate
+   */
+  public Comparator<String> getCollation() {
+    return null;
+  }
+
+  /**
+   * Tests if this database can bulk load from a stream with
+   * <code>LOAD DATA LOCAL INFILE</code>
+   *
+   * @return  true or false as appropriate
+   *
+   * @see     Load
+   */
+  public boolean isLoadInfile() {
+    return false;
+  }
+
+  /**
+   * Tests if this database streams a result only inside a transaction, so that
+   * autocommit must be off while the result is read
+   *
+   * @return  true or false as appropriate
+   */
+  public boolean isStreamTransactional() {
+    return false;
+  }
+
+  /**
+   * Quote a table or column name, each part of a qualified name separately.
+   * A name that already contains the quote character is taken to be quoted
+   * and is returned as it is.
+   *
+   * @param   name unquoted name, such as <code>beer</code> or <code>pub.beer</code>
+   *
+   * @return  quoted name
+   */
+  public String quote(String name) {
+    return quote(name, '"');
+  }
+
+  /**
+   * Restrict a statement to a window of rows
+   *
+   * @param   sql statement, including any ORDER BY clause
+   * @param   offset number of rows to skip
+   * @param   count maximum number of rows
+   *
+   * @return  sql
+   */
+  public String paginate(String sql,
+                         long offset,
+                         long count) {
+    return sql + " LIMIT " + count + ((offset > 0)? " OFFSET " + offset : "");
+  }
+
+  /**
+   * Configure a statement to stream its result rather than read it all
+   *
+   * @param   stmt to be configured
+   *
+   * @throws  SQLException
+   */
+  public void stream(Statement stmt) throws SQLException {
+    stmt.setFetchSize(1000);
+  }
+
+  /**
+   * Choose the dialect of a database
+   *
+   * @param   metaData of a connection
+   *
+   * @return  dialect, MySQL if no dialect accepts the database
+   *
+   * @throws  SQLException if the metadata can't be read
+   */
+  public static Dialect of(DatabaseMetaData metaData) throws SQLException {
+    String productName = metaData.getDatabaseProductName();
+    for (Dialect dialect : DIALECTS)
+      if (dialect.accepts(productName))
+        return dialect;
+    log.debug("No dialect for " + productName + "; assuming MySQL");
+    return MYSQL;
+  }
+
+  /**
+   * Choose the dialect of a connection, unless one is configured
+   *
+   * @param   configured dialect, or null to choose
+   * @param   connection
+   *
+   * @return  dialect
+   *
+   * @throws  SQLException if the metadata can't be read
+   */
+  static Dialect of(Dialect configured,
+                    Connection connection) throws SQLException {
+    return (configured != null)? configured : of(connection.getMetaData());
+  }
+
+  /*
+   * Quote a name with a quote character
+   *
+   * @param   name unquoted name
+   * @param   q quote character
+   *
+   * @return  quoted name
+   */
+  private static String quote(String name,
+                              char q) {
+    if (name.indexOf(q) >= 0)
+      return name;
+    StringBuilder sb = new StringBuilder();
+    for (String part : name.split("\\.", -1))
+      sb.append((sb.length() > 0)? "." : "").append(q).append(part).append(q);
+    return sb.toString();
+  }
+
+  /*
+   * Load the registered dialects, followed by the built-in ones
+   *
+   * @return  dialects
+   */
+  private static List<Dialect> load() {
+    List<Dialect> dialects = new ArrayList<>();
+    try {
+      for (Dialect dialect : ServiceLoader.load(Dialect.class))
+        dialects.add(dialect);
+    }
+    catch (RuntimeException | ServiceConfigurationError e) {
+      log.warn("Failed to load registered dialects: " + e.getMessage());
+    }
+    dialects.addAll(Arrays.asList(MYSQL, POSTGRESQL, H2, DERBY));
+    return Collections.unmodifiableList(dialects);
+  }
+
+  /**
+   * Apache Derby
+   */
+
+  public static final class Derby extends Dialect {
+
+    @Override public boolean accepts(String productName) {
+      return "Apache Derby".equalsIgnoreCase(productName);
+    }
+
+    @Override public String explain(String sql) {
+      return null;
+    }
+
+    /*
+     * FETCH NEXT requires at least one row, so an empty window keeps the
+     * statement, and its metadata, but filters out every row
+     */
+    @Override public String paginate(String sql,
+                                     long offset,
+                                     long count) {
+      if (count <= 0)
+        return "SELECT * FROM (" + sql + ") AS empty WHERE 1 = 0";
+      return sql + " OFFSET " + offset + " ROWS FETCH NEXT " + count + " ROWS ONLY";
+    }
+
+  }
+
+  /**
+   * H2
+   */
+
+  public static final class H2 extends Dialect {
+
+    @Override public boolean accepts(String productName) {
+      return "H2".equalsIgnoreCase(productName);
+    }
+
+  }
+
+  /**
+   * MySQL and MariaDB
+   */
+
+  public static final class MySQL extends Dialect {
+
+    @Override public boolean accepts(String productName) {
+      return "MySQL".equalsIgnoreCase(productName) || "MariaDB".equalsIgnoreCase(productName);
+    }
+
+    /*
+     * Case and accent insensitive, as the default utf8mb4 collations are
+     */
+    @Override public Comparator<String> getCollation() {
+      Collator collator = Collator.getInstance(Locale.ROOT);
+      collator.setStrength(Collator.PRIMARY);
+      return collator::compare;
+    }
+
+    @Override public boolean isLoadInfile() {
+      return true;
+    }
+
+    @Override public String paginate(String sql,
+                                     long offset,
+                                     long count) {
+      return sql + " LIMIT " + offset + "," + count;
+    }
+
+    @Override public String quote(String name) {
+      return Dialect.quote(name, '`');
+    }
+
+    @Override public void stream(Statement stmt) throws SQLException {
+      stmt.setFetchSize(Integer.MIN_VALUE);
+    }
+
+  }
+
+  /**
+   * PostgreSQL
+   */
+
+  public static final class PostgreSQL extends Dialect {
+
+    @Override public boolean accepts(String productName) {
+      return "PostgreSQL".equalsIgnoreCase(productName);
+    }
+
+    @Override public boolean isStreamTransactional() {
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,723 @@
+package io.mflo.rxjava_sql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import java.math.BigDecimal;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.persistence.TupleElement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model the export of Query results to a channel as CSV or JSON lines
+ *
+ * <p>An Export is passed to <code>Query.export</code>. Rows are encoded
+ * straight from the <code>ResultSet</code> into a buffer that is reused for
+ * the whole export, and the buffer is written to the channel whenever it
+ * fills. Numeric, boolean and temporal columns are read with their typed
+ * getters rather than as strings, integral and temporal values are encoded
+ * without boxing, and character data without intermediate byte arrays.
+ * Without compression the buffer is direct; with <code>gzip</code> it is a
+ * heap buffer fed to the compressor.</p>
+ *
+ * <p>CSV follows RFC 4180, with a header row of column names unless
+ * disabled; null is an empty field. JSON lines are one object per row, keyed
+ * by column name, with numbers and booleans unquoted; NaN and infinite
+ * numbers, which JSON can't represent, are null. Dates are written as
+ * <code>yyyy-MM-dd</code>, times as <code>HH:mm:ss</code> and timestamps as
+ * <code>yyyy-MM-dd HH:mm:ss</code> followed by any fraction of a second, in
+ * the time zone of the JVM, and are quoted in JSON.</p>
+ *
+ * <p>Each subscription to <code>Query.export</code> encodes with its own
+ * buffer and state, so an Export can be subscribed again, as by
+ * <code>retry</code>. The channel is not closed. Rows, bytes encoded, bytes
+ * written and rows per second are exposed as metrics, for the most recent
+ * subscription.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Export {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Export.class);
+
+  // room reserved for one encoded character
+  private static final int CHAR_BYTES = 6;
+
+  // room reserved for one encoded timestamp
+  private static final int TIMESTAMP_BYTES = 32;
+
+  /**
+   * Supported formats
+   */
+  public enum Format { CSV, JSON }
+
+  // private state
+  private final Counter channel;
+  private final Format format;
+  private volatile Encoder last = null;
+
+  // state accumulated by fluent API
+  private int bufferSize = 1 << 16;
+  private boolean gzip = false;
+  private boolean header = true;
+
+  /**
+   * Construct an <code>Export</code> to a channel, such as a <code>FileChannel</code>
+   *
+   * @param   channel destination, which is not closed
+   * @param   format CSV or JSON lines
+   */
+  public Export(WritableByteChannel channel,
+                Format format) {
+    this.channel = new Counter(channel);
+    this.format = format;
+  }
+
+  /**
+   * Fluent API to configure the size of the encoding buffer. If
+   * <code>bufferSize</code> is not called, the buffer is 64KB.
+   *
+   * @param   bufferSize bytes
+   *
+   * @return  this Export
+   */
+  public Export bufferSize(int bufferSize) {
+    this.bufferSize = Math.max(1024, bufferSize);
+    return this;
+  }
+
+  /**
+   * Access the number of bytes encoded, before any compression
+   *
+   * @return  count
+   */
+  public long getBytes() {
+    Encoder encoder = last;
+    return (encoder != null)? encoder.bytes + ((encoder.buffer != null)? encoder.buffer.position() : 0) : 0;
+  }
+
+  /**
+   * Access the number of bytes written to the channel
+   *
+   * @return  count
+   */
+  public long getBytesWritten() {
+    return channel.written;
+  }
+
+  /**
+   * Access the number of rows exported
+   *
+   * @return  count
+   */
+  public long getRows() {
+    Encoder encoder = last;
+    return (encoder != null)? encoder.rows : 0;
+  }
+
+  /**
+   * Access the export rate
+   *
+   * @return  rows per second
+   */
+  public double getRowsPerSecond() {
+    Encoder encoder = last;
+    if (encoder == null)
+      return 0;
+    long elapsed = ((encoder.end != 0)? encoder.end : System.nanoTime()) - encoder.start;
+    return (encoder.start != 0 && elapsed > 0)? encoder.rows * 1e9 / elapsed : 0;
+  }
+
+  /**
+   * Fluent API to configure Export to compress its output. If
+   * <code>gzip</code> is not called, output is not compressed.
+   *
+   * @param   gzip true to compress
+   *
+   * @return  this Export
+   */
+  public Export gzip(boolean gzip) {
+    this.gzip = gzip;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure Export to write a CSV header row. If
+   * <code>header</code> is not called, a header is written. Ignored for JSON lines.
+   *
+   * @param   header true to write column names first
+   *
+   * @return  this Export
+   */
+  public Export header(boolean header) {
+    this.header = header;
+    return this;
+  }
+
+  /**
+   * Start encoding for one subscription, which the metrics then describe
+   *
+   * @return  encoder, owned by the subscription
+   */
+  Encoder open() {
+    Encoder encoder = new Encoder();
+    last = encoder;
+    return encoder;
+  }
+
+  /**
+   * Encoding state of one subscription
+   */
+
+  final class Encoder {
+
+    // private state
+    private final Calendar calendar = new GregorianCalendar();
+    private ByteBuffer buffer;
+    private OutputStream gzipped = null;
+    private ResultSet current = null;
+    private String[] names = null;
+    private int[] types = null;
+    private long rows = 0;
+    private long bytes = 0;
+    private long start = 0;
+    private long end = 0;
+
+    /**
+     * Encode the current row of a <code>ResultSet</code>
+     *
+     * @param   rs positioned on a row
+     * @param   schema names of the columns of rs
+     *
+     * @throws  SQLException if the row can't be read
+     * @throws  IOException if the channel can't be written
+     */
+    void append(ResultSet rs,
+                Result.Schema schema) throws SQLException, IOException {
+      if (rs != current) {
+        current = rs;
+        if (names == null) {
+          String[] names = new String[schema.size()];
+          for (int i = 0; i < names.length; i++)
+            names[i] = schema.getName(i);
+          begin(names);
+        }
+        ResultSetMetaData rsMetaData = rs.getMetaData();
+        for (int i = 0; i < types.length; i++)
+          types[i] = rsMetaData.getColumnType(i + 1);
+      }
+      startRow();
+      for (int i = 0; i < names.length; i++) {
+        field(i);
+        switch (types[i]) {
+          case Types.BIGINT:
+          case Types.INTEGER:
+          case Types.SMALLINT:
+          case Types.TINYINT:
+            long value = rs.getLong(i + 1);
+            if (rs.wasNull())
+              putNull();
+            else putLong(value);
+            break;
+          case Types.BIT:
+          case Types.BOOLEAN:
+            boolean flag = rs.getBoolean(i + 1);
+            if (rs.wasNull())
+              putNull();
+            else putAscii(flag? "true" : "false");
+            break;
+          case Types.DECIMAL:
+          case Types.NUMERIC:
+            putDecimal(rs.getBigDecimal(i + 1));
+            break;
+          case Types.DOUBLE:
+          case Types.FLOAT:
+            double real = rs.getDouble(i + 1);
+            if (rs.wasNull())
+              putNull();
+            else putDouble(real);
+            break;
+          case Types.REAL:
+            float single = rs.getFloat(i + 1);
+            if (rs.wasNull())
+              putNull();
+            else putFloat(single);
+            break;
+          case Types.DATE:
+            putDate(rs.getDate(i + 1));
+            break;
+          case Types.TIME:
+            putDate(rs.getTime(i + 1));
+            break;
+          case Types.TIMESTAMP:
+            putDate(rs.getTimestamp(i + 1));
+            break;
+          default:
+            putString(rs.getString(i + 1));
+            break;
+        }
+      }
+      endRow();
+    }
+
+    /**
+     * Encode a <code>Result</code>, as when results are merged from several shards
+     *
+     * @param   result
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    void append(Result result) throws IOException {
+      if (names == null) {
+        List<TupleElement<?>> elements = result.getElements();
+        String[] names = new String[elements.size()];
+        for (int i = 0; i < names.length; i++)
+          names[i] = elements.get(i).getAlias();
+        begin(names);
+      }
+      startRow();
+      for (int i = 0; i < names.length; i++) {
+        field(i);
+        Object value = result.get(i + 1);
+        if (value == null)
+          putNull();
+        else if ((value instanceof Long) || (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte))
+          putLong(((Number)value).longValue());
+        else if (value instanceof BigDecimal)
+          putDecimal((BigDecimal)value);
+        else if (value instanceof Double)
+          putDouble((Double)value);
+        else if (value instanceof Float)
+          putFloat((Float)value);
+        else if (value instanceof Number)
+          putNumber(value.toString());
+        else if (value instanceof Boolean)
+          putAscii(value.toString());
+        else if (value instanceof Date)
+          putDate((Date)value);
+        else putString(value.toString());
+      }
+      endRow();
+    }
+
+    /**
+     * Flush everything encoded to the channel, finishing compression
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    void finish() throws IOException {
+      if (buffer == null)
+        begin(new String[0]);
+      flush();
+      if (gzipped != null)
+        ((GZIPOutputStream)gzipped).finish();
+      end = System.nanoTime();
+      log.debug("Exported " + rows + " rows, " + (bytes + buffer.position()) + " bytes encoded, " + getBytesWritten() + " written");
+    }
+
+    /*
+     * Start the export, writing the CSV header if configured
+     *
+     * @param   names of columns
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void begin(String[] names) throws IOException {
+      this.names = names;
+      this.types = new int[names.length];
+      this.start = System.nanoTime();
+      if (gzip) {
+        buffer = ByteBuffer.allocate(bufferSize);
+        gzipped = new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize);
+      }
+      else buffer = ByteBuffer.allocateDirect(bufferSize);
+      if ((format == Format.CSV) && header && (names.length > 0)) {
+        for (int i = 0; i < names.length; i++) {
+          if (i > 0)
+            put((byte)',');
+          putString(names[i]);
+        }
+        putAscii("\r\n");
+      }
+    }
+
+    /*
+     * End a row
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void endRow() throws IOException {
+      if (format == Format.JSON)
+        put((byte)'}');
+      if (format == Format.CSV)
+        put((byte)'\r');
+      put((byte)'\n');
+      rows++;
+    }
+
+    /*
+     * Start a field, with its separator and, for JSON, its key
+     *
+     * @param   index of column
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void field(int index) throws IOException {
+      if (index > 0)
+        put((byte)',');
+      if (format == Format.JSON) {
+        putString(names[index]);
+        put((byte)':');
+      }
+    }
+
+    /*
+     * Write the buffer to the channel
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void flush() throws IOException {
+      bytes += buffer.position();
+      buffer.flip();
+      if (gzipped != null)
+        gzipped.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+      else {
+        while (buffer.hasRemaining())
+          channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    /*
+     * Encode one byte
+     *
+     * @param   b
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void put(byte b) throws IOException {
+      if (!buffer.hasRemaining())
+        flush();
+      buffer.put(b);
+    }
+
+    /*
+     * Encode characters known to be ASCII and to need no quoting
+     *
+     * @param   s
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putAscii(String s) throws IOException {
+      for (int i = 0; i < s.length(); i++)
+        put((byte)s.charAt(i));
+    }
+
+    /*
+     * Encode one character as UTF-8
+     *
+     * @param   s containing the character
+     * @param   i index of the character
+     *
+     * @return  index of the last char consumed
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private int putChar(String s,
+                        int i) throws IOException {
+      if (buffer.remaining() < CHAR_BYTES)
+        flush();
+      char c = s.charAt(i);
+      if (c < 0x80)
+        buffer.put((byte)c);
+      else if (c < 0x800) {
+        buffer.put((byte)(0xC0 | (c >> 6)));
+        buffer.put((byte)(0x80 | (c & 0x3F)));
+      }
+      else if (Character.isHighSurrogate(c) && (i + 1 < s.length()) && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        buffer.put((byte)(0xF0 | (cp >> 18)));
+        buffer.put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+        buffer.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+        buffer.put((byte)(0x80 | (cp & 0x3F)));
+      }
+      else {
+        buffer.put((byte)(0xE0 | (c >> 12)));
+        buffer.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+        buffer.put((byte)(0x80 | (c & 0x3F)));
+      }
+      return i;
+    }
+
+    /*
+     * Encode a date, time or timestamp, quoted for JSON
+     *
+     * @param   date a java.sql.Date, Time or Timestamp, another Date as a
+     *          timestamp, or null
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putDate(Date date) throws IOException {
+      if (date == null) {
+        putNull();
+        return;
+      }
+      if (buffer.remaining() < TIMESTAMP_BYTES)
+        flush();
+      calendar.setTime(date);
+      if (format == Format.JSON)
+        buffer.put((byte)'"');
+      if (!(date instanceof Time)) {
+        putDigits(calendar.get(Calendar.YEAR), 4);
+        buffer.put((byte)'-');
+        putDigits(calendar.get(Calendar.MONTH) + 1, 2);
+        buffer.put((byte)'-');
+        putDigits(calendar.get(Calendar.DAY_OF_MONTH), 2);
+      }
+      if (!(date instanceof java.sql.Date)) {
+        if (!(date instanceof Time))
+          buffer.put((byte)' ');
+        putDigits(calendar.get(Calendar.HOUR_OF_DAY), 2);
+        buffer.put((byte)':');
+        putDigits(calendar.get(Calendar.MINUTE), 2);
+        buffer.put((byte)':');
+        putDigits(calendar.get(Calendar.SECOND), 2);
+        int nanos = (date instanceof Timestamp)? ((Timestamp)date).getNanos()
+          : (date instanceof Time)? 0 : calendar.get(Calendar.MILLISECOND) * 1000000;
+        if (nanos > 0) {
+          int width = 9;
+          for (; nanos % 10 == 0; width--)
+            nanos /= 10;
+          buffer.put((byte)'.');
+          putDigits(nanos, width);
+        }
+      }
+      if (format == Format.JSON)
+        buffer.put((byte)'"');
+    }
+
+    /*
+     * Encode a decimal in plain notation, or as null
+     *
+     * @param   decimal or null
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putDecimal(BigDecimal decimal) throws IOException {
+      if (decimal == null)
+        putNull();
+      else if ((decimal.scale() == 0) && (decimal.precision() < 19))
+        putLong(decimal.longValueExact());
+      else putAscii(decimal.toPlainString());
+    }
+
+    /*
+     * Encode non-negative digits, zero padded, into room already reserved
+     *
+     * @param   value
+     * @param   width minimum number of digits
+     */
+    private void putDigits(long value,
+                           int width) {
+      long divisor = 1;
+      for (int i = 1; (i < width) || (value / divisor >= 10); i++)
+        divisor *= 10;
+      for (; divisor > 0; divisor /= 10)
+        buffer.put((byte)('0' + (value / divisor) % 10));
+    }
+
+    /*
+     * Encode a double, which is integral without allocating
+     *
+     * @param   value
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putDouble(double value) throws IOException {
+      if ((value == Math.rint(value)) && (Math.abs(value) < 1e15)) {
+        putLong((long)value);
+        putAscii(".0");
+      }
+      else putNumber(Double.toString(value));
+    }
+
+    /*
+     * Encode a float, as a float rather than widened to a double
+     *
+     * @param   value
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putFloat(float value) throws IOException {
+      if ((value == Math.rint(value)) && (Math.abs(value) < 1e7f)) {
+        putLong((long)value);
+        putAscii(".0");
+      }
+      else putNumber(Float.toString(value));
+    }
+
+    /*
+     * Encode a long in decimal without allocating
+     *
+     * @param   value
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putLong(long value) throws IOException {
+      if (value == Long.MIN_VALUE) {
+        putAscii(Long.toString(value));
+        return;
+      }
+      if (buffer.remaining() < 20)
+        flush();
+      if (value < 0) {
+        buffer.put((byte)'-');
+        value = -value;
+      }
+      putDigits(value, 1);
+    }
+
+    /*
+     * Encode null
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putNull() throws IOException {
+      if (format == Format.JSON)
+        putAscii("null");
+    }
+
+    /*
+     * Encode a number unquoted, or as null if it is NaN or infinite and the
+     * format is JSON
+     *
+     * @param   number as a string, or null
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putNumber(String number) throws IOException {
+      if ((number == null) || ((format == Format.JSON) && (number.endsWith("NaN") || number.endsWith("Infinity"))))
+        putNull();
+      else putAscii(number);
+    }
+
+    /*
+     * Encode a string, quoted and escaped as the format requires
+     *
+     * @param   s string, or null
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void putString(String s) throws IOException {
+      if (s == null) {
+        putNull();
+        return;
+      }
+      if (format == Format.JSON) {
+        put((byte)'"');
+        for (int i = 0; i < s.length(); i++) {
+          char c = s.charAt(i);
+          switch (c) {
+            case '"': putAscii("\\\""); break;
+            case '\\': putAscii("\\\\"); break;
+            case '\n': putAscii("\\n"); break;
+            case '\r': putAscii("\\r"); break;
+            case '\t': putAscii("\\t"); break;
+            default:
+              if (c < 0x20) {
+                putAscii("\\u00");
+                put((byte)Character.forDigit(c >> 4, 16));
+                put((byte)Character.forDigit(c & 0xF, 16));
+              }
+              else i = putChar(s, i);
+          }
+        }
+        put((byte)'"');
+        return;
+      }
+      boolean quoted = false;
+      for (int i = 0; i < s.length() && !quoted; i++) {
+        char c = s.charAt(i);
+        quoted = (c == ',') || (c == '"') || (c == '\r') || (c == '\n');
+      }
+      if (quoted)
+        put((byte)'"');
+      for (int i = 0; i < s.length(); i++) {
+        if (s.charAt(i) == '"')
+          put((byte)'"');
+        i = putChar(s, i);
+      }
+      if (quoted)
+        put((byte)'"');
+    }
+
+    /*
+     * Start a row
+     *
+     * @throws  IOException if the channel can't be written
+     */
+    private void startRow() throws IOException {
+      if (format == Format.JSON)
+        put((byte)'{');
+    }
+
+  }
+
+  /**
+   * Channel wrapper that counts the bytes written
+   */
+
+  private static final class Counter implements WritableByteChannel {
+
+    // private state
+    private final WritableByteChannel channel;
+    private long written = 0;
+
+    /**
+     * Construct one <code>Counter</code>
+     *
+     * @param   channel to be wrapped
+     */
+    private Counter(WritableByteChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override public void close() throws IOException {
+      channel.close();
+    }
+
+    @Override public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override public int write(ByteBuffer src) throws IOException {
+      int n = channel.write(src);
+      written += n;
+      return n;
+    }
+
+  }
+
+}
@@ -0,0 +1,434 @@
+package io.mflo.rxjava_sql;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * Model a client-side join of two streams of Results
+ *
+ * <p>A Join combines each Result on the left with every Result on the right
+ * that has equal values for the join keys, so that rows from two different
+ * <code>DataSource</code>s can be joined without nested Query subscriptions.
+ * Each combined Result has the values of the left Result followed by those of
+ * the right; where both have a value of the same name, the right wins.</p>
+ *
+ * <p>Two strategies are available:</p>
+ * <ul>
+ * <li>{@link #merge} streams both sides in lockstep when both are already
+ * sorted by the join keys, holding only the current run of equal keys from
+ * the right side in memory.</li>
+ * <li>{@link #hash} builds a hash table from the right side, which should be
+ * the smaller, and probes it with the left. When the right side exceeds
+ * the <code>budget</code>, both sides are partitioned by key to temporary
+ * files, in the binary row format of a <code>Spool</code>, and joined one
+ * partition at a time. Left rows whose partition has no right rows are
+ * dropped rather than spilled. A partition whose right side still exceeds
+ * the budget is partitioned again, up to a fixed depth; the rows of a single
+ * key can't be split, so a key with more right rows than the budget is held
+ * in memory regardless.</li>
+ * </ul>
+ *
+ * <p>Both strategies join key values that <code>OrderBy</code> orders as
+ * equal, so that numbers of different types are equal by value. A merge join
+ * on collated <code>OrderBy</code> clauses also joins strings that are equal
+ * by the collation; a hash join compares strings exactly.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Join {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Join.class);
+
+  // number of Results queued per side
+  private static final int CAPACITY = 256;
+
+  // maximum number of times a spilled partition is partitioned again
+  private static final int MAX_DEPTH = 4;
+
+  // private state
+  private final Observable<Result> left;
+  private final Observable<Result> right;
+
+  // state accumulated by fluent API
+  // NOTE: hash and merge should never modify these fields, so a Join can be reused
+  private int budget = 100000;
+  private String[] keys = new String[0];
+  private int partitions = 16;
+
+  /**
+   * Construct a <code>Join</code> of two streams of Results
+   *
+   * @param   left Observable results
+   * @param   right Observable results; the build side of a hash join
+   */
+  public Join(Observable<Result> left,
+              Observable<Result> right) {
+    this.left = left;
+    this.right = right;
+  }
+
+  /**
+   * Fluent API to configure the maximum number of right side rows a hash
+   * join holds in memory before it partitions to disk.
+   *
+   * @param   budget maximum number of rows
+   *
+   * @return  this Join
+   */
+  public Join budget(int budget) {
+    this.budget = budget;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the names of the join key columns, which must
+   * be present on both sides
+   *
+   * @param   keys one or more column names
+   *
+   * @return  this Join
+   */
+  public Join on(String... keys) {
+    this.keys = keys;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the number of partitions a hash join spills to
+   * when it exceeds its <code>budget</code>.
+   *
+   * @param   partitions number of partitions
+   *
+   * @return  this Join
+   */
+  public Join partitions(int partitions) {
+    this.partitions = partitions;
+    return this;
+  }
+
+  /**
+   * Execute this <code>Join</code> by building a hash table from the right side
+   *
+   * @return  Observable combined results
+   */
+  public Observable<Result> hash() {
+    return Observable.create((subscriber) -> {
+      List<RowFile> spilled = new ArrayList<>();
+      try (Pipe<Result> build = new Pipe<>(right, CAPACITY);
+           Pipe<Result> probe = new Pipe<>(left, CAPACITY)) {
+        Map<Object,Object> table = new HashMap<>();
+        int rows = 0;
+        while (build.hasNext() && (rows < budget)) {
+          add(table, build.next());
+          rows++;
+        }
+        if (!build.hasNext()) {
+          while (probe.hasNext() && !subscriber.isUnsubscribed())
+            probe(table, probe.next(), subscriber);
+        }
+        else {
+          log.debug("Hash join exceeded budget of " + budget + " rows; spilling " + partitions + " partitions");
+          RowFile[] builds = partition(spilled);
+          for (Object matches : table.values()) {
+            if (matches instanceof Result)
+              builds[partitionOf(key((Result)matches), 0)].write((Result)matches);
+            else for (Result match : list(matches))
+              builds[partitionOf(key(match), 0)].write(match);
+          }
+          table = null;
+          while (build.hasNext()) {
+            Result result = build.next();
+            Object key = key(result);
+            if (key != null)
+              builds[partitionOf(key, 0)].write(result);
+          }
+          RowFile[] probes = partition(spilled);
+          while (probe.hasNext() && !subscriber.isUnsubscribed()) {
+            Result result = probe.next();
+            Object key = key(result);
+            int partition = (key != null)? partitionOf(key, 0) : -1;
+            if ((partition >= 0) && (builds[partition].size() > 0))
+              probes[partition].write(result);
+          }
+          for (int i = 0; (i < partitions) && !subscriber.isUnsubscribed(); i++)
+            join(builds[i], probes[i], 1, spilled, subscriber);
+        }
+        subscriber.onCompleted();
+      }
+      catch (Pipe.Failure e) {
+        subscriber.onError(e.getCause());
+      }
+      catch (IOException | UncheckedIOException | ClassNotFoundException e) {
+        subscriber.onError(e);
+      }
+      finally {
+        for (RowFile partition : spilled)
+          partition.close();
+      }
+    });
+  }
+
+  /**
+   * Execute this <code>Join</code> by merging two sides that are both sorted
+   * by the join keys
+   *
+   * @param   orderBys the join keys, in the sequence in which both sides are sorted
+   *
+   * @return  Observable combined results
+   */
+  public Observable<Result> merge(OrderBy... orderBys) {
+    Comparator<Result> order = OrderBy.comparator(orderBys);
+    return Observable.create((subscriber) -> {
+      try (Pipe<Result> lefts = new Pipe<>(left, CAPACITY);
+           Pipe<Result> rights = new Pipe<>(right, CAPACITY)) {
+        while (lefts.hasNext() && rights.hasNext() && !subscriber.isUnsubscribed()) {
+          int compared = order.compare(lefts.peek(), rights.peek());
+          if (compared < 0)
+            lefts.next();
+          else if (compared > 0)
+            rights.next();
+          else if (hasNull(lefts.peek(), orderBys))
+            lefts.next();
+          else {
+            Result first = rights.next();
+            List<Result> run = new ArrayList<>();
+            run.add(first);
+            while (rights.hasNext() && (order.compare(first, rights.peek()) == 0))
+              run.add(rights.next());
+            while (lefts.hasNext() && (order.compare(lefts.peek(), first) == 0)
+                                   && !subscriber.isUnsubscribed()) {
+              Result result = lefts.next();
+              for (Result match : run)
+                subscriber.onNext(Result.join(result, match));
+            }
+          }
+        }
+        subscriber.onCompleted();
+      }
+      catch (Pipe.Failure e) {
+        subscriber.onError(e.getCause());
+      }
+    });
+  }
+
+  /*
+   * Add a build side Result to a hash table. A key with a single match holds
+   * the Result itself rather than a list.
+   *
+   * @param   table
+   * @param   result
+   */
+  private void add(Map<Object,Object> table,
+                   Result result) {
+    Object key = key(result);
+    if (key == null)
+      return;
+    Object matches = table.get(key);
+    if (matches == null)
+      table.put(key, result);
+    else if (matches instanceof Result) {
+      List<Result> list = new ArrayList<>(2);
+      list.add((Result)matches);
+      list.add(result);
+      table.put(key, list);
+    }
+    else list(matches).add(result);
+  }
+
+  /*
+   * Tests if any merge join key of a Result is null, as null never joins
+   *
+   * @param   result
+   * @param   orderBys
+   *
+   * @return  true or false as appropriate
+   */
+  private static boolean hasNull(Result result,
+                                 OrderBy[] orderBys) {
+    for (OrderBy orderBy : orderBys)
+      if (orderBy.valueOf(result) == null)
+        return true;
+    return false;
+  }
+
+  /*
+   * Derive the hash key of a Result from its join key values
+   *
+   * @param   result
+   *
+   * @return  key, or null if any key value is null, as null never joins
+   */
+  private Object key(Result result) {
+    if (keys.length == 1)
+      return OrderBy.normalize(result.get(keys[0]));
+    Object[] values = new Object[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      values[i] = OrderBy.normalize(result.get(keys[i]));
+      if (values[i] == null)
+        return null;
+    }
+    return Arrays.asList(values);
+  }
+
+  /*
+   * Join one spilled partition, partitioning it again while its build side
+   * exceeds the budget and can still be split
+   *
+   * @param   build side of the partition
+   * @param   probe side of the partition
+   * @param   depth number of times the rows have been partitioned
+   * @param   spilled all partitions created, for cleanup
+   * @param   subscriber
+   *
+   * @throws  IOException
+   * @throws  ClassNotFoundException
+   */
+  private void join(RowFile build,
+                    RowFile probe,
+                    int depth,
+                    List<RowFile> spilled,
+                    Subscriber<? super Result> subscriber) throws IOException, ClassNotFoundException {
+    if ((build.size() > 0) && (probe.size() > 0)) {
+      if ((build.size() > budget) && (depth < MAX_DEPTH)) {
+        RowFile[] builds = partition(spilled);
+        build.read((result) -> write(builds[partitionOf(key(result), depth)], result));
+        boolean split = true;
+        for (RowFile part : builds)
+          split &= (part.size() < build.size());
+        if (split) {
+          log.debug("Hash join partition of " + build.size() + " rows exceeded budget; partitioning again");
+          RowFile[] probes = partition(spilled);
+          probe.read((result) -> {
+              int partition = partitionOf(key(result), depth);
+              return (builds[partition].size() == 0) || write(probes[partition], result);
+            });
+          build.close();
+          probe.close();
+          for (int i = 0; (i < partitions) && !subscriber.isUnsubscribed(); i++)
+            join(builds[i], probes[i], depth + 1, spilled, subscriber);
+          return;
+        }
+        for (RowFile part : builds)
+          part.close();
+      }
+      if (build.size() > budget)
+        log.warn("Hash join partition of " + build.size() + " rows can't be split within the budget of " + budget + "; joining in memory");
+      Map<Object,Object> table = new HashMap<>();
+      build.read((result) -> {
+          add(table, result);
+          return true;
+        });
+      probe.read((result) -> {
+          probe(table, result, subscriber);
+          return !subscriber.isUnsubscribed();
+        });
+    }
+    build.close();
+    probe.close();
+  }
+
+  /*
+   * View the matches of a key in a hash table as a list
+   *
+   * @param   matches more than one Result
+   *
+   * @return  list
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Result> list(Object matches) {
+    return (List<Result>)matches;
+  }
+
+  /*
+   * Create a set of empty partitions for one side
+   *
+   * @param   spilled all partitions created, for cleanup
+   *
+   * @return  partitions
+   *
+   * @throws  IOException
+   */
+  private RowFile[] partition(List<RowFile> spilled) throws IOException {
+    RowFile[] created = new RowFile[partitions];
+    for (int i = 0; i < partitions; i++) {
+      created[i] = new RowFile("rxjava-sql-join", null);
+      spilled.add(created[i]);
+    }
+    return created;
+  }
+
+  /*
+   * Find the partition of a key, mixing its hash differently at each depth so
+   * that a partition is split when it is partitioned again
+   *
+   * @param   key
+   * @param   depth number of times the rows have been partitioned
+   *
+   * @return  partition index
+   */
+  private int partitionOf(Object key,
+                          int depth) {
+    int hash = ((key != null)? key.hashCode() : 0) ^ (depth * 0x9e3779b9);
+    hash = (hash ^ (hash >>> 16)) * 0x85ebca6b;
+    hash = (hash ^ (hash >>> 13)) * 0xc2b2ae35;
+    return Math.floorMod(hash ^ (hash >>> 16), partitions);
+  }
+
+  /*
+   * Write a Result to a partition
+   *
+   * @param   partition
+   * @param   result
+   *
+   * @return  true, to keep reading
+   */
+  private static boolean write(RowFile partition,
+                               Result result) {
+    try {
+      partition.write(result);
+      return true;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /*
+   * Probe a hash table with a Result, emitting the combination with each match
+   *
+   * @param   table
+   * @param   result
+   * @param   subscriber
+   */
+  private void probe(Map<Object,Object> table,
+                     Result result,
+                     Subscriber<? super Result> subscriber) {
+    Object key = key(result);
+    if (key == null)
+      return;
+    Object matches = table.get(key);
+    if (matches instanceof Result)
+      subscriber.onNext(Result.join(result, (Result)matches));
+    else if (matches != null) {
+      for (Result match : list(matches))
+        subscriber.onNext(Result.join(result, match));
+    }
+  }
+
+}
@@ -0,0 +1,500 @@
+package io.mflo.rxjava_sql;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.lang.reflect.Method;
+
+import java.nio.charset.StandardCharsets;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+import java.math.BigDecimal;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import javax.persistence.TupleElement;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+/**
+ * Model a bulk load of Results into a table
+ *
+ * <p>A Load is created by the <code>SQL.load</code> methods.
+ * A fluent API configures the Load until it is ready to {@link #execute}.</p>
+ *
+ * <p>Results are pulled from the source through a bounded queue, so the
+ * source is held back when the database falls behind and memory stays
+ * constant. They are loaded in chunks. Against MySQL, each chunk is encoded
+ * on the fly as tab-separated text and streamed to
+ * <code>LOAD DATA LOCAL INFILE</code> through the driver's input stream hook,
+ * so no file is written. Against other databases, as told by their
+ * {@link Dialect}, or when the driver does not offer the hook, each chunk is a
+ * batch of <code>INSERT</code>s. Table and column names are quoted as the
+ * dialect requires.</p>
+ *
+ * <p>MySQL connections must allow <code>allowLoadLocalInfile</code>.
+ * <code>LOAD DATA LOCAL</code> skips rows it can't load, such as duplicate
+ * keys, with a warning rather than an error, so a chunk that loads fewer rows
+ * than were sent fails with an <code>SQLException</code> that carries the
+ * warnings. Dates, times and timestamps are sent as
+ * <code>yyyy-MM-dd HH:mm:ss</code> and its parts, with any fraction of a
+ * second, in the time zone of the JVM; decimals in plain notation.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Load {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Load.class);
+
+  // number of Results queued ahead of the database
+  private static final int CAPACITY = 1024;
+
+  // MySQL statement interfaces that offer setLocalInfileInputStream
+  private static final String[] MYSQL_STATEMENTS = new String[] {
+    "com.mysql.cj.jdbc.JdbcStatement",
+    "com.mysql.jdbc.Statement"
+  };
+
+  // private state
+  private final String table;
+  private final Observable<Result> source;
+  private final DataSource ds;
+
+  // state accumulated by fluent API
+  private Dialect dialect = null;
+  private int chunk = 10000;
+  private String[] columns = null;
+  private boolean infile = true;
+
+  /**
+   * Private ctor: use <code>SQL.load</code>
+   *
+   * @param   table to be loaded
+   * @param   source of Results
+   * @param   ds data source
+   *
+   * @see     SQL#load(String, rx.Observable) to load from an Observable
+   * @see     SQL#load(String, Query) to load from a Query
+   */
+  protected Load(String table,
+                 Observable<Result> source,
+                 DataSource ds) {
+    this.table = table;
+    this.source = source;
+    this.ds = ds;
+  }
+
+  /**
+   * Fluent API to configure the number of rows per chunk. If
+   * <code>chunk</code> is not called, chunks are 10000 rows.
+   *
+   * @param   chunk rows
+   *
+   * @return  this Load
+   */
+  public Load chunk(int chunk) {
+    this.chunk = Math.max(1, chunk);
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the columns loaded, which are also the names of
+   * the values in each Result. If <code>columns</code> is not called, the
+   * names in the first Result are used.
+   *
+   * @param   columns names
+   *
+   * @return  this Load
+   */
+  public Load columns(String... columns) {
+    this.columns = columns;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure Load with the dialect of its <code>SQL</code>
+   *
+   * @param   dialect or null to choose from the metadata of the connection
+   *
+   * @return  this Load
+   *
+   * @see     SQL#dialect
+   */
+  Load dialect(Dialect dialect) {
+    this.dialect = dialect;
+    return this;
+  }
+
+  /**
+   * Execute this <code>Load</code>
+   *
+   * @return  Observable progress, the total number of rows loaded, emitted after each chunk
+   */
+  public Observable<Long> execute() {
+    return Observable.create((subscriber) -> {
+      long total = 0;
+      try (Pipe<Result> pipe = new Pipe<>(source, CAPACITY);
+           Connection connection = ds.getConnection()) {
+        Dialect dialect = Dialect.of(this.dialect, connection);
+        boolean infile = this.infile && dialect.isLoadInfile();
+        if (!pipe.hasNext()) {
+          subscriber.onCompleted();
+          return;
+        }
+        String[] names = (columns != null)? columns : namesOf(pipe.peek());
+        while (pipe.hasNext() && !subscriber.isUnsubscribed()) {
+          int count = infile? loadInfile(dialect, connection, pipe, names) : -1;
+          if (count < 0) {
+            infile = false;
+            count = loadBatch(dialect, connection, pipe, names);
+          }
+          total += count;
+          log.debug("Loaded " + total + " rows into " + table);
+          subscriber.onNext(total);
+        }
+        subscriber.onCompleted();
+      }
+      catch (Pipe.Failure e) {
+        subscriber.onError(e.getCause());
+      }
+      catch (SQLException e) {
+        subscriber.onError(e);
+      }
+    });
+  }
+
+  /**
+   * Fluent API to configure Load to use <code>LOAD DATA LOCAL INFILE</code>
+   * when the driver supports it. If <code>infile</code> is not called, it is
+   * used when supported.
+   *
+   * @param   infile false to always use batched INSERTs
+   *
+   * @return  this Load
+   */
+  public Load infile(boolean infile) {
+    this.infile = infile;
+    return this;
+  }
+
+  /*
+   * Load one chunk as a batch of INSERTs
+   *
+   * @param   dialect to quote names
+   * @param   connection
+   * @param   pipe source of Results
+   * @param   names of columns
+   *
+   * @return  count of rows loaded
+   *
+   * @throws  SQLException
+   */
+  private int loadBatch(Dialect dialect,
+                        Connection connection,
+                        Pipe<Result> pipe,
+                        String[] names) throws SQLException {
+    StringBuilder sql = new StringBuilder("INSERT INTO ").append(dialect.quote(table)).append(" (");
+    StringBuilder params = new StringBuilder();
+    for (int i = 0; i < names.length; i++) {
+      sql.append((i > 0)? ", " : "").append(dialect.quote(names[i]));
+      params.append((i > 0)? ", ?" : "?");
+    }
+    sql.append(") VALUES (").append(params).append(')');
+    try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+      int rows = 0;
+      for (; (rows < chunk) && pipe.hasNext(); rows++) {
+        Result result = pipe.next();
+        for (int i = 0; i < names.length; i++)
+          stmt.setObject(i + 1, result.get(names[i]));
+        stmt.addBatch();
+      }
+      int count = 0;
+      for (int affected : stmt.executeBatch())
+        count += (affected == Statement.SUCCESS_NO_INFO)? 1 : affected;
+      return count;
+    }
+  }
+
+  /*
+   * Load one chunk through <code>LOAD DATA LOCAL INFILE</code>
+   *
+   * @param   dialect to quote names
+   * @param   connection
+   * @param   pipe source of Results
+   * @param   names of columns
+   *
+   * @return  count of rows loaded, or -1 if the driver has no input stream hook
+   *
+   * @throws  SQLException
+   */
+  private int loadInfile(Dialect dialect,
+                         Connection connection,
+                         Pipe<Result> pipe,
+                         String[] names) throws SQLException {
+    try (Statement stmt = connection.createStatement()) {
+      Method hook = null;
+      Object target = null;
+      for (String name : MYSQL_STATEMENTS) {
+        try {
+          Class<?> type = Class.forName(name);
+          if (stmt.isWrapperFor(type)) {
+            target = stmt.unwrap(type);
+            hook = type.getMethod("setLocalInfileInputStream", InputStream.class);
+            break;
+          }
+        }
+        catch (ClassNotFoundException | NoSuchMethodException e) {
+          continue;
+        }
+      }
+      if (hook == null) {
+        log.debug("No LOAD DATA LOCAL INFILE hook; loading " + table + " with batched INSERTs");
+        return -1;
+      }
+      Chunk in = new Chunk(pipe, names);
+      try {
+        hook.invoke(target, in);
+      }
+      catch (ReflectiveOperationException e) {
+        log.debug("LOAD DATA LOCAL INFILE hook failed; loading " + table + " with batched INSERTs");
+        return -1;
+      }
+      StringBuilder sql = new StringBuilder("LOAD DATA LOCAL INFILE 'stream' INTO TABLE ").append(dialect.quote(table))
+        .append(" CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (");
+      for (int i = 0; i < names.length; i++)
+        sql.append((i > 0)? ", " : "").append(dialect.quote(names[i]));
+      sql.append(')');
+      try {
+        stmt.execute(sql.toString());
+      }
+      catch (SQLException e) {
+        if (in.failure != null)
+          throw in.failure;
+        throw e;
+      }
+      if (in.failure != null)
+        throw in.failure;
+      int count = stmt.getUpdateCount();
+      SQLWarning warnings = stmt.getWarnings();
+      if (count != in.rows) {
+        SQLException e = new SQLException("LOAD DATA loaded " + count + " of " + in.rows + " rows into " + table
+                                          + ((warnings != null)? ": " + warnings.getMessage() : ""));
+        if (warnings != null)
+          e.setNextException(warnings);
+        throw e;
+      }
+      for (SQLWarning warning = warnings; warning != null; warning = warning.getNextWarning())
+        log.warn("LOAD DATA into " + table + ": " + warning.getMessage());
+      return count;
+    }
+  }
+
+  /*
+   * Find the names of the values in a Result
+   *
+   * @param   result
+   *
+   * @return  names
+   */
+  private static String[] namesOf(Result result) {
+    List<TupleElement<?>> elements = result.getElements();
+    String[] names = new String[elements.size()];
+    for (int i = 0; i < names.length; i++)
+      names[i] = elements.get(i).getAlias();
+    return names;
+  }
+
+  /**
+   * One chunk of Results, encoded on the fly as tab-separated text
+   */
+
+  private final class Chunk extends InputStream {
+
+    // private state
+    private final Pipe<Result> pipe;
+    private final String[] names;
+    private final Calendar calendar = new GregorianCalendar();
+    private byte[] row = new byte[1024];
+    private int position = 0;
+    private int length = 0;
+    private int rows = 0;
+    private Pipe.Failure failure = null;
+
+    /**
+     * Construct one <code>Chunk</code>
+     *
+     * @param   pipe source of Results
+     * @param   names of columns
+     */
+    private Chunk(Pipe<Result> pipe,
+                  String[] names) {
+      this.pipe = pipe;
+      this.names = names;
+    }
+
+    @Override public int read() throws IOException {
+      if ((position == length) && !fill())
+        return -1;
+      return row[position++] & 0xFF;
+    }
+
+    @Override public int read(byte[] b,
+                              int off,
+                              int len) throws IOException {
+      if (len == 0)
+        return 0;
+      int n = 0;
+      while (n < len) {
+        if ((position == length) && !fill())
+          break;
+        int copied = Math.min(len - n, length - position);
+        System.arraycopy(row, position, b, off + n, copied);
+        position += copied;
+        n += copied;
+      }
+      return (n > 0)? n : -1;
+    }
+
+    /*
+     * Encode the next Result into the row buffer
+     *
+     * @return  false at the end of the chunk
+     *
+     * @throws  IOException if the source failed
+     */
+    private boolean fill() throws IOException {
+      try {
+        if ((rows == chunk) || !pipe.hasNext())
+          return false;
+        Result result = pipe.next();
+        position = 0;
+        length = 0;
+        for (int i = 0; i < names.length; i++) {
+          if (i > 0)
+            put((byte)'\t');
+          Object value = result.get(names[i]);
+          if (value == null) {
+            put((byte)'\\');
+            put((byte)'N');
+          }
+          else if (value instanceof byte[])
+            escape((byte[])value);
+          else if (value instanceof Boolean)
+            put((byte)(((Boolean)value)? '1' : '0'));
+          else if (value instanceof Date)
+            putDate((Date)value);
+          else if (value instanceof BigDecimal)
+            escape(((BigDecimal)value).toPlainString().getBytes(StandardCharsets.UTF_8));
+          else escape(value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        put((byte)'\n');
+        rows++;
+        return true;
+      }
+      catch (Pipe.Failure e) {
+        failure = e;
+        throw new IOException("Bulk load source failed", e.getCause());
+      }
+    }
+
+    /*
+     * Encode bytes, escaping the field and line terminators
+     *
+     * @param   bytes
+     */
+    private void escape(byte[] bytes) {
+      for (byte b : bytes) {
+        switch (b) {
+          case '\\': put((byte)'\\'); put((byte)'\\'); break;
+          case '\t': put((byte)'\\'); put((byte)'t'); break;
+          case '\n': put((byte)'\\'); put((byte)'n'); break;
+          case '\r': put((byte)'\\'); put((byte)'r'); break;
+          case 0: put((byte)'\\'); put((byte)'0'); break;
+          default: put(b);
+        }
+      }
+    }
+
+    /*
+     * Encode a date, time or timestamp as MySQL reads it
+     *
+     * @param   date a java.sql.Date, Time or Timestamp, or another Date as a timestamp
+     */
+    private void putDate(Date date) {
+      calendar.setTime(date);
+      if (!(date instanceof Time)) {
+        putDigits(calendar.get(Calendar.YEAR), 4);
+        put((byte)'-');
+        putDigits(calendar.get(Calendar.MONTH) + 1, 2);
+        put((byte)'-');
+        putDigits(calendar.get(Calendar.DAY_OF_MONTH), 2);
+      }
+      if (date instanceof java.sql.Date)
+        return;
+      if (!(date instanceof Time))
+        put((byte)' ');
+      putDigits(calendar.get(Calendar.HOUR_OF_DAY), 2);
+      put((byte)':');
+      putDigits(calendar.get(Calendar.MINUTE), 2);
+      put((byte)':');
+      putDigits(calendar.get(Calendar.SECOND), 2);
+      int nanos = (date instanceof Timestamp)? ((Timestamp)date).getNanos()
+        : (date instanceof Time)? 0 : calendar.get(Calendar.MILLISECOND) * 1000000;
+      if (nanos > 0) {
+        int width = 9;
+        for (; nanos % 10 == 0; width--)
+          nanos /= 10;
+        put((byte)'.');
+        putDigits(nanos, width);
+      }
+    }
+
+    /*
+     * Encode non-negative digits, zero padded
+     *
+     * @param   value
+     * @param   width minimum number of digits
+     */
+    private void putDigits(int value,
+                           int width) {
+      int divisor = 1;
+      for (int i = 1; (i < width) || (value / divisor >= 10); i++)
+        divisor *= 10;
+      for (; divisor > 0; divisor /= 10)
+        put((byte)('0' + (value / divisor) % 10));
+    }
+
+    /*
+     * Append one byte to the row buffer, growing it if necessary
+     *
+     * @param   b
+     */
+    private void put(byte b) {
+      if (length == row.length) {
+        byte[] grown = new byte[row.length * 2];
+        System.arraycopy(row, 0, grown, 0, length);
+        row = grown;
+      }
+      row[length++] = b;
+    }
+
+  }
+
+}
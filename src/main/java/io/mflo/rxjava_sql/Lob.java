@@ -0,0 +1,300 @@
+package io.mflo.rxjava_sql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model a large object column as a lazy stream
+ *
+ * <p>When a <code>Query</code> is configured with <code>lobs(true)</code>, the
+ * value of each BLOB, CLOB and LONGVAR* column is a Lob rather than a
+ * <code>byte[]</code> or <code>String</code>; a null column is still null.
+ * The Lob streams straight from the live <code>ResultSet</code>, so it can be
+ * read once, and only during the <code>onNext</code> call that delivers its
+ * <code>Result</code>. To retain a Lob past <code>onNext</code> or to read it
+ * more than once, {@link #spill} it to a memory-mapped temporary file, and
+ * {@link #close} it when done.</p>
+ *
+ * <p>A binary Lob is read as bytes and a character Lob as characters.
+ * Character Lobs are spilled in UTF-8.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Lob implements AutoCloseable {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Lob.class);
+
+  // size of copy buffer used when spilling
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  // private state
+  private final InputStream bytes;
+  private final Reader chars;
+  private volatile boolean valid = true;
+  private boolean read = false;
+  private File file;
+  private ByteBuffer spilled;
+
+  /**
+   * Private ctor: use <code>Query.lobs</code>
+   *
+   * @param   bytes stream of a binary Lob, or null
+   * @param   chars stream of a character Lob, or null
+   */
+  private Lob(InputStream bytes,
+              Reader chars) {
+    this.bytes = bytes;
+    this.chars = chars;
+  }
+
+  /**
+   * Read a <code>Lob</code> column from the current row of a <code>ResultSet</code>
+   *
+   * @param   rs positioned on the row
+   * @param   index of column, relative to 1
+   * @param   type of column, from <code>java.sql.Types</code>
+   *
+   * @return  Lob, or null if the value is null
+   *
+   * @throws  SQLException if the column can't be read
+   */
+  static Lob of(ResultSet rs,
+                int index,
+                int type) throws SQLException {
+    if (isCharacter(type)) {
+      Reader chars = rs.getCharacterStream(index);
+      return (chars != null)? new Lob(null, chars) : null;
+    }
+    InputStream bytes = rs.getBinaryStream(index);
+    return (bytes != null)? new Lob(bytes, null) : null;
+  }
+
+  /**
+   * Release the file, if any, to which this <code>Lob</code> was spilled
+   */
+  @Override public synchronized void close() {
+    spilled = null;
+    if (file != null && !file.delete())
+      log.warn("Failed to delete " + file);
+    file = null;
+  }
+
+  /**
+   * Access a binary <code>Lob</code> as a stream of bytes
+   *
+   * @return  stream
+   *
+   * @throws  SQLException if the Lob is not binary, or can no longer be read
+   */
+  public synchronized InputStream getBinaryStream() throws SQLException {
+    if (chars != null)
+      throw new SQLException("Character Lob; use getCharacterStream");
+    if (spilled != null)
+      return new BufferStream(spilled.duplicate());
+    check();
+    read = true;
+    return bytes;
+  }
+
+  /**
+   * Access a binary <code>Lob</code> as a channel of bytes
+   *
+   * @return  channel
+   *
+   * @throws  SQLException if the Lob is not binary, or can no longer be read
+   */
+  public ReadableByteChannel getChannel() throws SQLException {
+    return Channels.newChannel(getBinaryStream());
+  }
+
+  /**
+   * Access a character <code>Lob</code> as a stream of characters
+   *
+   * @return  stream
+   *
+   * @throws  SQLException if the Lob is not character, or can no longer be read
+   */
+  public synchronized Reader getCharacterStream() throws SQLException {
+    if (bytes != null)
+      throw new SQLException("Binary Lob; use getBinaryStream");
+    if (spilled != null)
+      return new InputStreamReader(new BufferStream(spilled.duplicate()), StandardCharsets.UTF_8);
+    check();
+    read = true;
+    return chars;
+  }
+
+  /**
+   * Tests if this is a character <code>Lob</code>
+   *
+   * @return  true or false as appropriate
+   */
+  public boolean isCharacter() {
+    return chars != null;
+  }
+
+  /**
+   * Tests if this <code>Lob</code> can still be read
+   *
+   * @return  true or false as appropriate
+   */
+  public boolean isValid() {
+    return valid || (spilled != null);
+  }
+
+  /**
+   * Copy this <code>Lob</code> to a memory-mapped temporary file, so that it
+   * remains valid after <code>onNext</code>. Must be called during
+   * <code>onNext</code>.
+   *
+   * @return  this Lob
+   *
+   * @throws  IOException if the file can't be written
+   * @throws  SQLException if the value can't be read
+   */
+  public synchronized Lob spill() throws IOException, SQLException {
+    if (spilled != null)
+      return this;
+    check();
+    file = File.createTempFile("rxjava-sql-lob", ".bin");
+    file.deleteOnExit();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+         FileChannel channel = raf.getChannel()) {
+      try (OutputStream out = Channels.newOutputStream(channel)) {
+        read = true;
+        if (chars != null) {
+          Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+          char[] buffer = new char[BUFFER_SIZE];
+          for (int n; (n = chars.read(buffer)) != -1; )
+            writer.write(buffer, 0, n);
+          writer.flush();
+        }
+        else {
+          byte[] buffer = new byte[BUFFER_SIZE];
+          for (int n; (n = bytes.read(buffer)) != -1; )
+            out.write(buffer, 0, n);
+        }
+        spilled = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Describe this <code>Lob</code> for debugging purposes
+   *
+   * @return  description
+   */
+  @Override public String toString() {
+    return "Lob[" + (isCharacter()? "character" : "binary") + (isValid()? "]" : ", invalid]");
+  }
+
+  /**
+   * Tests if a JDBC column type is streamed as a <code>Lob</code>
+   *
+   * @param   type from <code>java.sql.Types</code>
+   *
+   * @return  true or false as appropriate
+   */
+  static boolean isLob(int type) {
+    switch (type) {
+      case Types.BLOB:
+      case Types.LONGVARBINARY:
+      case Types.CLOB:
+      case Types.NCLOB:
+      case Types.LONGVARCHAR:
+      case Types.LONGNVARCHAR:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Tests if a JDBC column type is a character type
+   *
+   * @param   type from <code>java.sql.Types</code>
+   *
+   * @return  true or false as appropriate
+   */
+  static boolean isCharacter(int type) {
+    return (type == Types.CLOB) || (type == Types.NCLOB)
+        || (type == Types.LONGVARCHAR) || (type == Types.LONGNVARCHAR);
+  }
+
+  /**
+   * Mark this <code>Lob</code> as no longer readable from its <code>ResultSet</code>
+   */
+  void invalidate() {
+    valid = false;
+  }
+
+  /*
+   * Check that this <code>Lob</code> can still be read from its <code>ResultSet</code>
+   *
+   * @throws  SQLException if not
+   */
+  private void check() throws SQLException {
+    if (!valid)
+      throw new SQLException("Lob read after onNext; spill it to retain it");
+    if (read)
+      throw new SQLException("Lob already read; spill it to read it again");
+  }
+
+  /**
+   * Thin <code>InputStream</code> over a <code>ByteBuffer</code>
+   */
+
+  private static class BufferStream extends InputStream {
+
+    // private state
+    private final ByteBuffer buffer;
+
+    private BufferStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override public int available() {
+      return buffer.remaining();
+    }
+
+    @Override public int read() {
+      return buffer.hasRemaining()? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override public int read(byte[] bytes,
+                              int offset,
+                              int length) {
+      if (!buffer.hasRemaining())
+        return -1;
+      int n = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, n);
+      return n;
+    }
+
+  }
+
+}
@@ -1,6 +1,9 @@
 package io.mflo.rxjava_sql;
 
+import java.math.BigDecimal;
+
 import java.util.Arrays;
+import java.util.Comparator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +21,7 @@ abstract public class OrderBy {
 
   private boolean ascending;
   private String id;
+  private Comparator<? super String> collation = null;
 
   /**
    * Private ctor -- use inner ASC or DESC classes
@@ -31,6 +35,154 @@ abstract public class OrderBy {
     this.id = id;
   }
 
+  /**
+   * Fluent API to configure the collation of this clause's column, so that
+   * Results are ordered client-side as the database orders its strings. If
+   * <code>collate</code> is not called, the collation passed to
+   * <code>comparator</code> is used.
+   *
+   * @param   collation such as <code>String.CASE_INSENSITIVE_ORDER</code> or a
+   *          <code>java.text.Collator</code>, or null for binary order
+   *
+   * @return  this OrderBy
+   */
+  public OrderBy collate(Comparator<? super String> collation) {
+    this.collation = collation;
+    return this;
+  }
+
+  /**
+   * Create a comparator that orders Results the same way as a list of order
+   * by clauses. Nulls sort first in ascending order, as they do in MySQL.
+   * Strings are compared by their natural Java ordering, which matches a
+   * binary collation, unless a clause is collated.
+   *
+   * @param   orderBys array
+   *
+   * @return  comparator
+   */
+  public static Comparator<Result> comparator(OrderBy[] orderBys) {
+    return comparator(orderBys, null);
+  }
+
+  /**
+   * Create a comparator that orders Results the same way as a list of order
+   * by clauses, comparing strings by a collation unless a clause has its own
+   *
+   * @param   orderBys array
+   * @param   collation of clauses that are not collated, or null for binary order
+   *
+   * @return  comparator
+   *
+   * @see     Dialect#getCollation
+   */
+  public static Comparator<Result> comparator(OrderBy[] orderBys,
+                                              Comparator<? super String> collation) {
+    return (a, b) -> {
+      for (OrderBy orderBy : orderBys) {
+        Comparator<? super String> strings = (orderBy.collation != null)? orderBy.collation : collation;
+        int compared = compare(orderBy.valueOf(a), orderBy.valueOf(b), strings);
+        if (compared != 0)
+          return orderBy.isAscending()? compared : -compared;
+      }
+      return 0;
+    };
+  }
+
+  /**
+   * Compare two column values, with nulls first and numbers of
+   * different types compared by value
+   *
+   * @param   a value
+   * @param   b value
+   *
+   * @return  negative, zero or positive as a is less than, equal to or greater than b
+   */
+  static int compare(Object a,
+                     Object b) {
+    return compare(a, b, null);
+  }
+
+  /**
+   * Compare two column values, with nulls first, numbers of different types
+   * compared by value and strings compared by a collation
+   *
+   * @param   a value
+   * @param   b value
+   * @param   collation of strings, or null for binary order
+   *
+   * @return  negative, zero or positive as a is less than, equal to or greater than b
+   */
+  static int compare(Object a,
+                     Object b,
+                     Comparator<? super String> collation) {
+    if (a == null || b == null)
+      return (a == null)? ((b == null)? 0 : -1) : 1;
+    if ((collation != null) && (a instanceof String) && (b instanceof String))
+      return collation.compare((String)a, (String)b);
+    if ((a instanceof Number) && (b instanceof Number) && (a.getClass() != b.getClass())) {
+      if (!isFinite((Number)a) || !isFinite((Number)b))
+        return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+      return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+    }
+    @SuppressWarnings("unchecked")
+    Comparable<Object> comparable = (Comparable<Object>)a;
+    return comparable.compareTo(b);
+  }
+
+  /**
+   * Normalize a column value so that values equal by <code>compare</code>,
+   * such as numbers of different types, are also equal by <code>equals</code>
+   * and so can be hashed
+   *
+   * @param   value
+   *
+   * @return  normalized value: an integral number as a Long if it fits, any
+   *          other finite number as a BigDecimal without trailing zeros,
+   *          NaN or an infinity as a Double, and anything else as it is
+   */
+  static Object normalize(Object value) {
+    if ((value instanceof Long) || (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte))
+      return ((Number)value).longValue();
+    if (!(value instanceof Number))
+      return value;
+    if (!isFinite((Number)value))
+      return ((Number)value).doubleValue();
+    if ((value instanceof Double) || (value instanceof Float)) {
+      double d = ((Number)value).doubleValue();
+      if ((d == Math.rint(d)) && (Math.abs(d) < 0x1p62))
+        return (long)d;
+    }
+    BigDecimal decimal = (value instanceof BigDecimal)? (BigDecimal)value : new BigDecimal(value.toString());
+    decimal = decimal.stripTrailingZeros();
+    if ((decimal.scale() <= 0) && (decimal.toBigInteger().bitLength() < 64))
+      return decimal.longValue();
+    return decimal;
+  }
+
+  /*
+   * Tests if a number has a decimal representation, that is, it is not NaN
+   * or infinite
+   *
+   * @param   number
+   *
+   * @return  true or false as appropriate
+   */
+  private static boolean isFinite(Number number) {
+    if ((number instanceof Double) || (number instanceof Float))
+      return !Double.isNaN(number.doubleValue()) && !Double.isInfinite(number.doubleValue());
+    return true;
+  }
+
+  /**
+   * Access the collation of this clause's column
+   *
+   * @return  collation, or null if not collated
+   */
+  public Comparator<? super String> getCollation() {
+    return collation;
+  }
+
   /**
    * Access order by clause identifier
    *
@@ -60,6 +212,23 @@ abstract public class OrderBy {
     return Arrays.toString(orderBys).replace("[", "").replace("]", "");
   }
 
+  /**
+   * Find the value of this clause's column in a Result, allowing for the
+   * column to be qualified by a table name in SQL but not in the Result
+   *
+   * @param   result
+   *
+   * @return  value
+   */
+  Object valueOf(Result result) {
+    if (result.has(id))
+      return result.get(id);
+    String unqualified = id.substring(id.lastIndexOf('.') + 1);
+    if (result.has(unqualified))
+      return result.get(unqualified);
+    throw new IllegalArgumentException("Order by column not in result [" + id + "]");
+  }
+
   /**
    * Convert order by clause to an SQL string
    *
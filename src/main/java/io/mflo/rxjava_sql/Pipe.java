@@ -0,0 +1,145 @@
+package io.mflo.rxjava_sql;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+/**
+ * Pull the items of an <code>Observable</code> through a bounded queue
+ *
+ * <p>The source is subscribed on an I/O thread as soon as the Pipe is
+ * constructed. When the queue is full the source thread blocks, so that
+ * a synchronous source like <code>Query.execute</code> is paced by the
+ * consumer and memory stays bounded.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+final class Pipe<T> implements Iterator<T>, AutoCloseable {
+
+  // sentinel for end of stream
+  private static final Object END = new Object();
+
+  // private state
+  private final BlockingQueue<Object> queue;
+  private final Subscription subscription;
+  private volatile boolean closed = false;
+  private Object head = null;
+
+  /**
+   * Construct a <code>Pipe</code> and subscribe to its source
+   *
+   * @param   source <code>Observable</code>
+   * @param   capacity maximum number of items queued
+   */
+  Pipe(Observable<T> source,
+       int capacity) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.subscription = source.subscribeOn(Schedulers.io()).subscribe(new Subscriber<T>() {
+        @Override public void onCompleted() {
+          put(END);
+        }
+        @Override public void onError(Throwable e) {
+          put(new Failure(e));
+        }
+        @Override public void onNext(T item) {
+          put(item);
+        }
+      });
+  }
+
+  /**
+   * Release the source, even if it is blocked on a full queue
+   */
+  @Override public void close() {
+    closed = true;
+    subscription.unsubscribe();
+    queue.clear();
+  }
+
+  /**
+   * Tests if the source has another item, waiting for it as necessary
+   *
+   * @return  true or false as appropriate
+   *
+   * @throws  Failure if the source failed
+   */
+  @Override public boolean hasNext() {
+    if (head == null) {
+      try {
+        head = queue.take();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        head = new Failure(e);
+      }
+    }
+    if (head instanceof Failure)
+      throw (Failure)head;
+    return head != END;
+  }
+
+  /**
+   * Get the next item from the source
+   *
+   * @return  item
+   */
+  @Override public T next() {
+    T item = peek();
+    head = null;
+    return item;
+  }
+
+  /**
+   * Get the next item from the source without consuming it
+   *
+   * @return  item
+   */
+  T peek() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    return (T)head;
+  }
+
+  /*
+   * Queue an item, giving up if the Pipe has been closed
+   *
+   * @param   item
+   */
+  private void put(Object item) {
+    try {
+      while (!closed && !queue.offer(item, 100, TimeUnit.MILLISECONDS));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Wrap the failure of a source, so that it can cross the <code>Iterator</code> API
+   */
+
+  static class Failure extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Construct one <code>Failure</code>
+     *
+     * @param   cause of failure
+     */
+    private Failure(Throwable cause) {
+      super(cause);
+    }
+
+  }
+
+}
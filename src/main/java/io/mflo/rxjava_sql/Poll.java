@@ -0,0 +1,205 @@
+package io.mflo.rxjava_sql;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+/**
+ * Model a continuous Query that tails a table by a high-water-mark column
+ *
+ * <p>A Poll is created by the <code>Query.poll</code> method.
+ * A fluent API configures the Poll until it is ready to {@link #execute}.</p>
+ *
+ * <p>Each tick retrieves only the rows whose watermark column is beyond the
+ * last one emitted, in watermark order, up to the <code>limit</code> count of
+ * the Query and never more than the subscriber has requested. The statement
+ * is built once per subscription. When a tick
+ * finds no rows, the interval to the next doubles, up to the maximum; when
+ * it finds rows, the interval returns to the minimum; when it fills its
+ * window, the next tick is immediate.</p>
+ *
+ * <p>A tick takes a connection like any other execution of the Query,
+ * subject to its bulkhead and streamed as its dialect does. While the next
+ * tick is immediate, the connection and its prepared statements are held
+ * for it, so a backlog is drained without reconnecting; they are released
+ * whenever the Poll waits, and on unsubscription. A tick that fails
+ * terminates the subscription with its error.</p>
+ *
+ * <p>The watermark column must be monotonic, like an auto-increment id or
+ * an updated_at timestamp, and is named as it appears in the results. On
+ * its own it must also be unique: each tick retrieves rows strictly beyond
+ * the watermark, so rows that share the last watermark emitted but fell
+ * outside the window would be skipped. When it is not unique, like most
+ * updated_at columns, configure a unique {@link #key} to break the ties:
+ * rows are then retrieved in watermark and key order, from the watermark
+ * onwards and beyond the key.</p>
+ *
+ * <p>Each subscription tails from its own position, starting from the
+ * configured {@link #from} values. To checkpoint, record the watermark
+ * and key columns of the last Result processed, and restore them with
+ * <code>from</code>.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Poll {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Poll.class);
+
+  // private state
+  private final Query query;
+  private final String column;
+
+  // state accumulated by fluent API
+  private Object fromKey = null;
+  private Object fromWatermark = null;
+  private String key = null;
+  private long maxInterval = 60000;
+  private long minInterval = 1000;
+
+  /**
+   * Private ctor: use <code>Query.poll</code>
+   *
+   * @param   query to be polled
+   * @param   column name of watermark column
+   *
+   * @see     Query#poll to construct from a Query
+   */
+  protected Poll(Query query,
+                 String column) {
+    this.query = query;
+    this.column = column;
+  }
+
+  /**
+   * Execute this <code>Poll</code>. The Observable never completes; unsubscribe
+   * to stop polling.
+   *
+   * @return  Observable results
+   */
+  public Observable<Result> execute() {
+    return query.execute(this);
+  }
+
+  /**
+   * Fluent API to configure Poll to resume beyond a checkpointed watermark. If
+   * <code>from</code> is not called, the first tick retrieves from the first row.
+   *
+   * @param   watermark value of watermark column
+   *
+   * @return  this Poll
+   */
+  public Poll from(Object watermark) {
+    return from(watermark, null);
+  }
+
+  /**
+   * Fluent API to configure Poll to resume beyond a checkpointed watermark
+   * and key. If <code>from</code> is not called, the first tick retrieves
+   * from the first row.
+   *
+   * @param   watermark value of watermark column
+   * @param   key value of key column, or null to resume strictly beyond the watermark
+   *
+   * @return  this Poll
+   */
+  public Poll from(Object watermark,
+                   Object key) {
+    this.fromWatermark = watermark;
+    this.fromKey = (watermark != null)? key : null;
+    return this;
+  }
+
+  /**
+   * Access the name of the watermark column
+   *
+   * @return  column name
+   */
+  public String getColumn() {
+    return column;
+  }
+
+  /**
+   * Access the name of the key column that breaks watermark ties
+   *
+   * @return  column name, or null if the watermark column is unique
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Access the watermark from which each subscription starts
+   *
+   * @return  value of watermark column, or null to start from the first row
+   */
+  public Object getWatermark() {
+    return fromWatermark;
+  }
+
+  /**
+   * Fluent API to configure Poll with the bounds of its adaptive interval. If
+   * <code>interval</code> is not called, ticks are between one second and one
+   * minute apart.
+   *
+   * @param   min interval after a tick that found rows
+   * @param   max interval after a run of ticks that found none
+   * @param   unit of min and max
+   *
+   * @return  this Poll
+   */
+  public Poll interval(long min,
+                       long max,
+                       TimeUnit unit) {
+    this.minInterval = unit.toMillis(min);
+    this.maxInterval = Math.max(minInterval, unit.toMillis(max));
+    return this;
+  }
+
+  /**
+   * Fluent API to configure Poll with a unique key column that breaks ties
+   * between rows with the same watermark. If <code>key</code> is not called,
+   * the watermark column must be unique.
+   *
+   * @param   key name of key column, as it appears in the results
+   *
+   * @return  this Poll
+   */
+  public Poll key(String key) {
+    this.key = key;
+    return this;
+  }
+
+  /**
+   * Access the key from which each subscription starts
+   *
+   * @return  value of key column, or null
+   */
+  Object getFromKey() {
+    return fromKey;
+  }
+
+  /**
+   * Access the interval after a run of empty ticks
+   *
+   * @return  milliseconds
+   */
+  long getMaxInterval() {
+    return maxInterval;
+  }
+
+  /**
+   * Access the interval after a tick that found rows
+   *
+   * @return  milliseconds
+   */
+  long getMinInterval() {
+    return minInterval;
+  }
+
+}
@@ -1,14 +1,26 @@
 package io.mflo.rxjava_sql;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
@@ -16,7 +28,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import rx.Observable;
+import rx.Producer;
+import rx.Scheduler;
 import rx.Subscriber;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
 
 /**
  * Model SQL SELECT
@@ -24,6 +41,13 @@ import rx.Subscriber;
  * <p>A Query is created by the <code>SQL.query</code> method.
  * A fluent API configures the Query until it is ready to {@link #execute}.</p>
  *
+ * <p>When the <code>SQL</code> is sharded, a Query that binds the shard key
+ * is sent to one shard. Otherwise it is sent to all shards in parallel and
+ * the results are merged in <code>OrderBy</code> sequence, with strings
+ * compared by the collation of the {@link Dialect} unless an
+ * <code>OrderBy</code> is collated, and the <code>limit</code> applied after
+ * merging.</p>
+ *
  * @author      http://mflo.io
  * @version     0.0.1
  */
@@ -33,17 +57,37 @@ public final class Query implements Parameters {
   // logger for this class
   private static final Logger log = LoggerFactory.getLogger(Query.class);
 
+  // number of Results queued per shard during a scatter-gather
+  private static final int GATHER_CAPACITY = 256;
+
+  // number of rows per window measured to size the next adaptive window
+  private static final int SAMPLE_ROWS = 16;
+
+  // names of the parameters bound by a Poll, in statement order
+  private static final String WATERMARK = "rxjava_sql_watermark";
+  private static final String WATERMARK_TIE = "rxjava_sql_watermark_tie";
+  private static final String KEY = "rxjava_sql_key";
+
   // private state
   private final String sql;
   private final DataSource ds;
+  private final Shards shards;
 
   // state accumulated by fluent API
   // NOTE: execute should never modify these fields, so a Query can be reused
+  private Adaptive adaptive = null;
   private boolean allRows = false;
+  private Map<String,Bulkhead> bulkheads = null;
+  private String category = Bulkhead.DEFAULT;
+  private Dialect dialect = null;
+  private int fetchSize = 0;
   private int[] limit = new int[] { 0, 1 };
+  private boolean lobs = false;
   private OrderBy[] orderBys = new OrderBy[0];
   private Map<String,Object> parameters = new HashMap();
   private int queryTimeout = 0;
+  private SlowLog slowLog = null;
+  private boolean stream = false;
 
   /**
    * Private ctor: use <code>SQL.query</code>
@@ -55,8 +99,110 @@ public final class Query implements Parameters {
    */
   protected Query(String sql,
                   DataSource ds) {
+    this(sql, ds, null);
+  }
+
+  /**
+   * Private ctor: use <code>SQL.query</code>
+   *
+   * @param   sql SQL SELECT statement
+   * @param   ds data source, or null when sharded
+   * @param   shards data sources when sharded, or null
+   *
+   * @see     SQL#query to construct from a string representation
+   */
+  protected Query(String sql,
+                  DataSource ds,
+                  Shards shards) {
     this.sql = sql;
     this.ds = ds;
+    this.shards = shards;
+  }
+
+  /**
+   * Fluent API to configure Query to tune its window size adaptively when it
+   * retrieves all matching rows. The <code>limit</code> count is then only the
+   * size of the first window.
+   *
+   * @param   adaptive bounds, targets and metrics of window sizing
+   *
+   * @return  this Query
+   *
+   * @see     #allRows(boolean)
+   */
+  public Query adaptive(Adaptive adaptive) {
+    this.adaptive = adaptive;
+    return this;
+  }
+
+  /*
+   * Compute a single value server-side, over the SQL of this <code>Query</code>
+   * wrapped as a subquery, without <code>ORDER BY</code> or windowing. When
+   * sharded and the shard key is not bound, the value is computed on every
+   * shard in parallel and the values are combined.
+   *
+   * @param   select expression to compute
+   * @param   rows maximum number of rows of the outer query; zero means no limit
+   * @param   combine combines the values of two shards
+   *
+   * @return  Observable value, which may be null
+   */
+  private Observable<Object> aggregate(String select,
+                                       int rows,
+                                       Func2<Object,Object,Object> combine) {
+    DataSource target = (shards != null)? shards.route(parameters) : ds;
+    if (target != null)
+      return aggregate(target, select, rows);
+    List<Observable<Object>> values = new ArrayList<>();
+    for (DataSource shard : shards.getShards())
+      values.add(aggregate(shard, select, rows).subscribeOn(Schedulers.io()));
+    return Observable.merge(values).reduce(combine);
+  }
+
+  /*
+   * Compute a single value server-side against one data source
+   *
+   * @param   ds data source
+   * @param   select expression to compute
+   * @param   rows maximum number of rows of the outer query; zero means no limit
+   *
+   * @return  Observable value, which may be null
+   */
+  private Observable<Object> aggregate(DataSource ds,
+                                       String select,
+                                       int rows) {
+    return Observable.create((subscriber) -> {
+      Object value = null;
+      try (Connection connection = connect(ds)) {
+        Dialect dialect = Dialect.of(this.dialect, connection);
+        Map<String,Integer> ordinalByName = new HashMap<>();
+        String prepared = "SELECT " + select + " FROM (" + orderParameterNames(sql, ordinalByName) + ") AS aggregated";
+        if (rows > 0)
+          prepared = dialect.paginate(prepared, 0, rows);
+        try (PreparedStatement stmt = connection.prepareStatement(prepared)) {
+          stmt.setQueryTimeout(queryTimeout);
+          injectParameters(stmt, parameters, ordinalByName);
+          log.debug(stmt.toString());
+          long start = System.nanoTime();
+          int count = 0;
+          try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+              value = rs.getObject(1);
+              count = 1;
+            }
+          }
+          if (slowLog != null)
+            slowLog.record(ds, dialect, prepared, (explain) -> injectParameters(explain, parameters, ordinalByName),
+                           parameters, count, System.nanoTime() - start);
+        }
+      }
+      catch (SQLException e) {
+        subscriber.onError(e);
+        return;
+      }
+      subscriber.onNext(value);
+      subscriber.onCompleted();
+    });
   }
 
   /**
@@ -73,40 +219,366 @@ public final class Query implements Parameters {
     return this;
   }
 
+  /**
+   * Fluent API to configure Query with the category of work it belongs to,
+   * for admission control. If <code>category</code> is not called, the
+   * Query belongs to <code>Bulkhead.DEFAULT</code>.
+   *
+   * @param   category name
+   *
+   * @return  this Query
+   *
+   * @see     SQL#bulkhead
+   */
+  public Query category(String category) {
+    this.category = category;
+    return this;
+  }
+
+  /**
+   * Execute this <code>Query</code>, collecting all the results in columnar form.
+   * Rows are written straight from the <code>ResultSet</code> into the columns,
+   * without creating a <code>Result</code> for each. The columns are described
+   * by the <code>ResultSetMetaData</code>, so they are named even when no row
+   * matches.
+   *
+   * @return  Observable columns, emitted once all rows are retrieved
+   */
+  public Observable<Columns> columns() {
+    DataSource target = (shards != null)? shards.route(parameters) : ds;
+    return Observable.create((subscriber) -> {
+      Columns[] columns = new Columns[1];
+      Row row = new Row() {
+          @Override public void accept(ResultSet rs,
+                                       Result.Schema schema) throws SQLException {
+            columns[0].append(rs);
+          }
+          @Override public void describe(ResultSetMetaData rsMetaData) throws SQLException {
+            if (columns[0] == null)
+              columns[0] = new Columns(rsMetaData);
+          }
+        };
+      try {
+        if (target != null)
+          scan(target, limit, allRows, subscriber, row);
+        else {
+          Throwable[] failure = new Throwable[1];
+          columns[0] = new Columns();
+          gather().subscribe(columns[0]::append, (e) -> failure[0] = e);
+          if (failure[0] != null) {
+            subscriber.onError(failure[0]);
+            return;
+          }
+          if (columns[0].size() == 0) {
+            // no rows to name the columns: describe an empty window of one shard
+            columns[0] = null;
+            scan(shards.getShards().get(0), new int[] { 0, 0 }, false, subscriber, row);
+          }
+        }
+        if (columns[0] == null)
+          columns[0] = new Columns();
+        columns[0].freeze();
+        subscriber.onNext(columns[0]);
+        subscriber.onCompleted();
+      }
+      catch (SQLException e) {
+        subscriber.onError(e);
+      }
+    });
+  }
+
+  /**
+   * Count the rows matching this <code>Query</code>, server-side. The
+   * <code>limit</code>, <code>allRows</code> and <code>orderBy</code>
+   * configuration is ignored.
+   *
+   * @return  Observable count
+   */
+  public Observable<Long> count() {
+    return aggregate("COUNT(*)", 0, (a, b) -> ((Number)a).longValue() + ((Number)b).longValue())
+      .map((value) -> ((Number)value).longValue());
+  }
+
+  /**
+   * Execute this <code>Query</code> in cursor mode. The same <code>Cursor</code>
+   * is emitted for every row, positioned on that row and valid only during
+   * <code>onNext</code>; use <code>Cursor.copy</code> to retain a row. Large
+   * objects are not streamed in cursor mode.
+   *
+   * @return  Observable cursor, once per row
+   */
+  public Observable<Cursor> cursor() {
+    DataSource target = (shards != null)? shards.route(parameters) : ds;
+    return Observable.create((subscriber) -> {
+      Cursor cursor = new Cursor();
+      try {
+        if (target != null) {
+          scan(target, limit, allRows, subscriber, (rs, schema) -> {
+              cursor.reset(rs, schema);
+              subscriber.onNext(cursor);
+              cursor.invalidate();
+            });
+        }
+        else {
+          Throwable[] failure = new Throwable[1];
+          gather().subscribe((result) -> {
+              cursor.reset(result);
+              subscriber.onNext(cursor);
+              cursor.invalidate();
+            }, (e) -> failure[0] = e);
+          if (failure[0] != null) {
+            subscriber.onError(failure[0]);
+            return;
+          }
+        }
+        subscriber.onCompleted();
+      }
+      catch (SQLException e) {
+        subscriber.onError(e);
+      }
+    });
+  }
+
+  /*
+   * Measure the size of the current row from the values read, with large
+   * objects, which are not read twice, counted at their nominal size
+   *
+   * @param   rs positioned on the row
+   * @param   rsMetaData
+   *
+   * @return  bytes
+   *
+   * @throws  SQLException
+   */
+  private static long measureBytes(ResultSet rs,
+                                   ResultSetMetaData rsMetaData) throws SQLException {
+    long bytes = 0;
+    for (int i = 1; i <= rsMetaData.getColumnCount(); i++) {
+      if (Lob.isLob(rsMetaData.getColumnType(i))) {
+        bytes += Math.min(Math.max(rsMetaData.getColumnDisplaySize(i), 1), 1 << 16);
+        continue;
+      }
+      Object value = rs.getObject(i);
+      if (value instanceof String)
+        bytes += 2 * ((String)value).length();
+      else if (value instanceof byte[])
+        bytes += ((byte[])value).length;
+      else if (value instanceof BigDecimal)
+        bytes += ((BigDecimal)value).unscaledValue().bitLength() / 8 + 8;
+      else if (value != null)
+        bytes += 8;
+    }
+    return bytes;
+  }
+
   /**
    * Execute this <code>Query</code>
    *
    * @return  Observable results
    */
   public Observable<Result> execute() {
+    if (shards != null) {
+      DataSource shard = shards.route(parameters);
+      return (shard != null)? execute(shard, limit, allRows, lobs) : gather();
+    }
+    return execute(ds, limit, allRows, lobs);
+  }
+
+  /*
+   * Execute this <code>Query</code> against one data source
+   *
+   * @param   ds data source
+   * @param   limit window specification
+   * @param   allRows true to retrieve all matching rows window by window
+   * @param   lobs true to stream large object columns
+   *
+   * @return  Observable results
+   */
+  private Observable<Result> execute(DataSource ds,
+                                     int[] limit,
+                                     boolean allRows,
+                                     boolean lobs) {
     return Observable.create((subscriber) -> {
-      int[] window = new int[] { limit[0], limit[1] };
-      do {
-        try (Connection connection = ds.getConnection()) {
-          Map<String,Integer> ordinalByName = new HashMap<>();
-          String prepared = prepareStatement(window, ordinalByName);
-          try (PreparedStatement stmt = connection.prepareStatement(prepared)) {
-            stmt.setQueryTimeout(queryTimeout);
-            injectParameters(stmt, parameters, ordinalByName);
-            log.debug(stmt.toString());
-            try (ResultSet rs = stmt.executeQuery()) {
-              int count = 0;
-              for (count = 0; rs.next() && !subscriber.isUnsubscribed(); count++)
-                subscriber.onNext(new Result(populate(rs)));
-              if (count < window[1])
-                subscriber.unsubscribe();
+      List<Lob> streamed = lobs? new ArrayList<>() : null;
+      try {
+        scan(ds, limit, allRows, subscriber, (rs, schema) -> {
+            subscriber.onNext(populate(rs, schema, streamed));
+            if (streamed != null) {
+              for (Lob lob : streamed)
+                lob.invalidate();
+              streamed.clear();
             }
+          });
+        subscriber.onCompleted();
+      }
+      catch (SQLException e) {
+        subscriber.onError(e);
+      }
+    });
+  }
+
+  /*
+   * Execute a <code>Poll</code> of this <code>Query</code>
+   *
+   * @param   poll
+   *
+   * @return  Observable results
+   */
+  Observable<Result> execute(Poll poll) {
+    DataSource target = (shards != null)? shards.route(parameters) : ds;
+    return Observable.create((subscriber) -> {
+      if (target == null) {
+        subscriber.onError(new SQLException("Poll of sharded query requires shard key [" + sql + "]"));
+        return;
+      }
+      subscriber.setProducer(new Tail(poll, target, subscriber));
+    });
+  }
+
+  /**
+   * Test whether any row matches this <code>Query</code>, server-side. At most
+   * one row is retrieved from each shard, and none is sent to the client.
+   *
+   * @return  Observable true or false as appropriate
+   */
+  public Observable<Boolean> exists() {
+    return aggregate("1", 1, (a, b) -> (a != null)? a : b)
+      .map((value) -> value != null);
+  }
+
+  /**
+   * Execute this <code>Query</code>, exporting all the results to a channel.
+   * Rows are encoded straight from the <code>ResultSet</code>, without
+   * creating a <code>Result</code> for each.
+   *
+   * @param   export destination, format and metrics
+   *
+   * @return  Observable export, emitted once all rows are written
+   */
+  public Observable<Export> export(Export export) {
+    DataSource target = (shards != null)? shards.route(parameters) : ds;
+    return Observable.create((subscriber) -> {
+      Export.Encoder encoder = export.open();
+      try {
+        if (target != null) {
+          scan(target, limit, allRows, subscriber, (rs, schema) -> {
+              try {
+                encoder.append(rs, schema);
+              }
+              catch (IOException e) {
+                throw new SQLException("Export failed: " + e.getMessage(), e);
+              }
+            });
+        }
+        else {
+          Throwable[] failure = new Throwable[1];
+          gather().subscribe((result) -> {
+              try {
+                encoder.append(result);
+              }
+              catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            }, (e) -> failure[0] = (e instanceof UncheckedIOException)? e.getCause() : e);
+          if (failure[0] != null) {
+            subscriber.onError(failure[0]);
+            return;
           }
         }
-        catch (SQLException e) {
-          subscriber.onError(e);
+        encoder.finish();
+        subscriber.onNext(export);
+        subscriber.onCompleted();
+      }
+      catch (IOException | SQLException e) {
+        subscriber.onError(e);
+      }
+    });
+  }
+
+  /**
+   * Fluent API to configure Query with a JDBC fetch size hint, such as
+   * <code>Integer.MIN_VALUE</code> to stream rows one at a time from MySQL.
+   * If <code>fetchSize</code> is not called then the driver default is used.
+   *
+   * @param   fetchSize number of rows fetched per round trip; zero means the driver default
+   *
+   * @return  this Query
+   *
+   * @see     #stream(boolean)
+   */
+  public Query fetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+    return this;
+  }
+
+  /*
+   * Execute this <code>Query</code> against all shards in parallel, merging
+   * the results in <code>OrderBy</code> sequence. Each shard retrieves from
+   * its first row, so that the global <code>limit</code> can be applied after
+   * the merge. Large objects are never streamed, as each shard runs ahead
+   * of the merge.
+   *
+   * @return  Observable results
+   */
+  private Observable<Result> gather() {
+    int[] partial = allRows? new int[] { 0, limit[1] } : new int[] { 0, limit[0] + limit[1] };
+    return Observable.create((subscriber) -> {
+      List<Pipe<Result>> pipes = new ArrayList<>();
+      try {
+        Comparator<Result> order = OrderBy.comparator(orderBys, collation());
+        PriorityQueue<Pipe<Result>> heads = new PriorityQueue<>((a, b) -> order.compare(a.peek(), b.peek()));
+        for (DataSource shard : shards.getShards())
+          pipes.add(new Pipe<>(execute(shard, partial, allRows, false), GATHER_CAPACITY));
+        for (Pipe<Result> pipe : pipes)
+          if (pipe.hasNext())
+            heads.add(pipe);
+        int skip = limit[0];
+        long take = allRows? Long.MAX_VALUE : limit[1];
+        while (!heads.isEmpty() && (take > 0) && !subscriber.isUnsubscribed()) {
+          Pipe<Result> pipe = heads.poll();
+          Result result = pipe.next();
+          if (skip > 0)
+            skip--;
+          else {
+            subscriber.onNext(result);
+            take--;
+          }
+          if (pipe.hasNext())
+            heads.add(pipe);
         }
-        window[0] += window[1];
-      } while (allRows && !subscriber.isUnsubscribed());
-      subscriber.onCompleted();
+        subscriber.onCompleted();
+      }
+      catch (Pipe.Failure e) {
+        subscriber.onError(e.getCause());
+      }
+      catch (SQLException e) {
+        subscriber.onError(e);
+      }
+      finally {
+        for (Pipe<Result> pipe : pipes)
+          pipe.close();
+      }
     });
   }
 
+  /*
+   * Resolve the collation by which shards are merged: that of the configured
+   * dialect, or else of the first shard's database
+   *
+   * @return  collation, or null for binary order
+   *
+   * @throws  SQLException if the metadata of the first shard can't be read
+   */
+  private Comparator<String> collation() throws SQLException {
+    if (dialect != null)
+      return dialect.getCollation();
+    if (orderBys.length == 0)
+      return null;
+    try (Connection connection = connect(shards.getShards().get(0))) {
+      return Dialect.of(connection.getMetaData()).getCollation();
+    }
+  }
+
   /**
    * Fluent API to configure Query to limit count of rows retrieved. If <code>limit</code>
    * is not called, only the first matching row is retrieved. If <code>allRows(true)</code>
@@ -141,6 +613,50 @@ public final class Query implements Parameters {
     return this;
   }
 
+  /**
+   * Fluent API to configure Query to stream large object columns. The value of
+   * each BLOB, CLOB and LONGVAR* column is then a {@link Lob} that reads
+   * straight from the <code>ResultSet</code> and is valid only during
+   * <code>onNext</code>, rather than a fully materialized <code>byte[]</code>
+   * or <code>String</code>. Combine with <code>fetchSize</code> if the
+   * driver would otherwise buffer whole rows. Large objects are not streamed
+   * when a sharded Query is sent to all shards.
+   *
+   * @param   lobs true to stream large objects
+   *
+   * @return  this Query
+   *
+   * @see     #fetchSize(int)
+   */
+  public Query lobs(boolean lobs) {
+    this.lobs = lobs;
+    return this;
+  }
+
+  /**
+   * Find the largest value of a column over the rows matching this
+   * <code>Query</code>, server-side
+   *
+   * @param   column name as it appears in the results
+   *
+   * @return  Observable value, or null if no row has a value
+   */
+  public Observable<Object> max(String column) {
+    return aggregate("MAX(" + column + ")", 0, (a, b) -> extreme(a, b, 1));
+  }
+
+  /**
+   * Find the smallest value of a column over the rows matching this
+   * <code>Query</code>, server-side
+   *
+   * @param   column name as it appears in the results
+   *
+   * @return  Observable value, or null if no row has a value
+   */
+  public Observable<Object> min(String column) {
+    return aggregate("MIN(" + column + ")", 0, (a, b) -> extreme(a, b, -1));
+  }
+
   /**
    * Fluent API to configure Query with retrieval order specification
    *
@@ -202,43 +718,94 @@ public final class Query implements Parameters {
     return this;
   }
 
+  /**
+   * Create a continuous <code>Poll</code> of this Query, which tails it by a
+   * monotonic watermark column. The <code>limit</code> count of this Query
+   * bounds the rows retrieved per tick; its <code>OrderBy</code> clauses
+   * are replaced by the watermark order.
+   *
+   * @param   column name of watermark column, as it appears in the results
+   *
+   * @return  Poll to be configured by fluent API
+   */
+  public Poll poll(String column) {
+    return new Poll(this, column);
+  }
+
   /*
-   * Populate a map of name/value pairs from a <code>ResultSet</code>.
+   * Populate a <code>Result</code> from the current row of a <code>ResultSet</code>
    *
    * @param   rs
+   * @param   schema names of the columns, shared by every row of rs
+   * @param   streamed collects the Lobs created, or null not to stream large objects
    *
-   * @return  attributes map of name/value pairs
+   * @return  Result
    *
    * @throws  SQLException
    */
-  private LinkedHashMap<String,Object> populate(ResultSet rs) throws SQLException {
-    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+  private Result populate(ResultSet rs,
+                          Result.Schema schema,
+                          List<Lob> streamed) throws SQLException {
     ResultSetMetaData rsMetaData = rs.getMetaData();
-    for (int i = 1; i <= rsMetaData.getColumnCount(); i++) {
-      String identifier = rsMetaData.getColumnName(i);
-      String alias = rsMetaData.getColumnLabel(i);
-      if (alias != null)
-        identifier = alias;
-      attributes.put(identifier, rs.getObject(i));
+    Object[] values = new Object[schema.size()];
+    for (int i = 1; i <= values.length; i++) {
+      int type = rsMetaData.getColumnType(i);
+      if ((streamed != null) && Lob.isLob(type)) {
+        Lob lob = Lob.of(rs, i, type);
+        if (lob != null)
+          streamed.add(lob);
+        values[i - 1] = lob;
+      }
+      else values[i - 1] = rs.getObject(i);
     }
-    return attributes;
+    return new Result(schema, values);
   }
 
   /*
-   * Pre-prepare an SQL statement by adding LIMIT and ORDER BY clauses
+   * Pre-prepare an SQL statement by adding ORDER BY and pagination clauses
    *
+   * @param   dialect of the database
    * @param   window
    * @param   ordinalByName
    *
    * @return  sql
    */
-  private String prepareStatement(int[] window,
+  private String prepareStatement(Dialect dialect,
+                                  int[] window,
                                   Map<String,Integer> ordinalByName) {
     StringBuilder prepared = new StringBuilder(sql);
     if (orderBys.length > 0)
       prepared.append(" ORDER BY " + OrderBy.join(orderBys));
-    prepared.append(" LIMIT " + window[0] + "," + window[1]);
-    return orderParameterNames(prepared.toString(), ordinalByName);
+    return orderParameterNames(dialect.paginate(prepared.toString(), window[0], window[1]), ordinalByName);
+  }
+
+  /*
+   * Pre-prepare an SQL statement to poll beyond a watermark. The watermark
+   * and key are named parameters, so they are found by name when bound.
+   *
+   * @param   dialect of the database
+   * @param   poll watermark and key columns
+   * @param   beyond false for a tick without a watermark
+   * @param   ordinalByName
+   *
+   * @return  sql
+   */
+  private String preparePoll(Dialect dialect,
+                             Poll poll,
+                             boolean beyond,
+                             Map<String,Integer> ordinalByName) {
+    String column = poll.getColumn();
+    String key = poll.getKey();
+    StringBuilder prepared = new StringBuilder("SELECT * FROM (" + sql + " ) AS polled");
+    if (beyond && (key == null))
+      prepared.append(" WHERE " + column + " > :" + WATERMARK);
+    else if (beyond)
+      prepared.append(" WHERE " + column + " >= :" + WATERMARK
+                      + " AND (" + column + " > :" + WATERMARK_TIE + " OR " + key + " > :" + KEY + " )");
+    prepared.append(" ORDER BY " + column + " ASC");
+    if (key != null)
+      prepared.append(", " + key + " ASC");
+    return orderParameterNames(dialect.paginate(prepared.toString(), 0, limit[1]), ordinalByName);
   }
 
   /**
@@ -255,4 +822,463 @@ public final class Query implements Parameters {
     return this;
   }
 
+  /*
+   * Scan the rows of this <code>Query</code> from one data source, window by
+   * window, until a window is short, the subscriber unsubscribes or, unless
+   * <code>allRows</code>, after the first window.
+   *
+   * @param   ds data source
+   * @param   limit window specification
+   * @param   allRows true to retrieve all matching rows window by window
+   * @param   subscriber checked for unsubscription
+   * @param   row consumer of each row
+   *
+   * @throws  SQLException
+   */
+  private void scan(DataSource ds,
+                    int[] limit,
+                    boolean allRows,
+                    Subscriber<?> subscriber,
+                    Row row) throws SQLException {
+    Adaptive adaptive = allRows? this.adaptive : null;
+    boolean timed = (adaptive != null) || (slowLog != null);
+    int[] window = new int[] { limit[0], (adaptive != null)? adaptive.first(limit[1]) : limit[1] };
+    int count = 0;
+    int size = 0;
+    Dialect dialect = null;
+    do {
+      size = window[1];
+      long start;
+      long consumed = 0;
+      long bytesPerRow = 0;
+      try (Connection connection = connect(ds)) {
+        if (dialect == null)
+          dialect = Dialect.of(this.dialect, connection);
+        Map<String,Integer> ordinalByName = new HashMap<>();
+        String prepared = prepareStatement(dialect, window, ordinalByName);
+        boolean transactional = begin(dialect, connection);
+        try (PreparedStatement stmt = connection.prepareStatement(prepared)) {
+          configure(dialect, stmt);
+          injectParameters(stmt, parameters, ordinalByName);
+          log.debug(stmt.toString());
+          // time the window from its execution, not from waiting for a connection
+          start = System.nanoTime();
+          try (ResultSet rs = stmt.executeQuery()) {
+            Result.Schema schema = Result.Schema.of(rs.getMetaData());
+            row.describe(rs.getMetaData());
+            if (!timed) {
+              for (count = 0; rs.next() && !subscriber.isUnsubscribed(); count++)
+                row.accept(rs, schema);
+            }
+            else {
+              // size the window by the first rows read, before they are consumed
+              ResultSetMetaData rsMetaData = rs.getMetaData();
+              long sampled = 0;
+              for (count = 0; rs.next() && !subscriber.isUnsubscribed(); count++) {
+                if ((adaptive != null) && (count < SAMPLE_ROWS))
+                  sampled += measureBytes(rs, rsMetaData);
+                long before = System.nanoTime();
+                row.accept(rs, schema);
+                consumed += System.nanoTime() - before;
+              }
+              if (count > 0)
+                bytesPerRow = sampled / Math.min(count, SAMPLE_ROWS);
+            }
+          }
+        }
+        finally {
+          if (transactional)
+            connection.setAutoCommit(true);
+        }
+        if (slowLog != null)
+          slowLog.record(ds, dialect, prepared, (explain) -> injectParameters(explain, parameters, ordinalByName),
+                         parameters, count, System.nanoTime() - start - consumed);
+      }
+      window[0] += count;
+      if (adaptive != null)
+        window[1] = adaptive.next(size, count, System.nanoTime() - start - consumed, consumed, bytesPerRow);
+    } while (allRows && (count == size) && !subscriber.isUnsubscribed());
+  }
+
+  /**
+   * Fluent API to configure Query with the bulkheads of its <code>SQL</code>
+   *
+   * @param   bulkheads by category, or null for none
+   *
+   * @return  this Query
+   *
+   * @see     SQL#bulkhead
+   */
+  Query bulkheads(Map<String,Bulkhead> bulkheads) {
+    this.bulkheads = bulkheads;
+    return this;
+  }
+
+  /*
+   * Begin reading on a connection: if rows are streamed and the Dialect
+   * streams only in a transaction, turn autocommit off
+   *
+   * @param   dialect of the database
+   * @param   connection
+   *
+   * @return  true if autocommit was turned off, and must be turned back on
+   *
+   * @throws  SQLException
+   */
+  private boolean begin(Dialect dialect,
+                        Connection connection) throws SQLException {
+    boolean transactional = (stream || (fetchSize != 0)) && dialect.isStreamTransactional() && connection.getAutoCommit();
+    if (transactional)
+      connection.setAutoCommit(false);
+    return transactional;
+  }
+
+  /*
+   * Configure a statement with the timeout, and the fetch size or the
+   * streaming of the Dialect
+   *
+   * @param   dialect of the database
+   * @param   stmt
+   *
+   * @throws  SQLException
+   */
+  private void configure(Dialect dialect,
+                         PreparedStatement stmt) throws SQLException {
+    stmt.setQueryTimeout(queryTimeout);
+    if (fetchSize != 0)
+      stmt.setFetchSize(fetchSize);
+    else if (stream)
+      dialect.stream(stmt);
+  }
+
+  /*
+   * Get a connection, subject to admission control by category
+   *
+   * @param   ds data source
+   *
+   * @return  connection
+   *
+   * @throws  SQLException when the connection can't be got, or admission is refused
+   */
+  private Connection connect(DataSource ds) throws SQLException {
+    Bulkhead bulkhead = (bulkheads != null)? bulkheads.get(category) : null;
+    return (bulkhead != null)? bulkhead.getConnection(ds, queryTimeout * 1000L) : ds.getConnection();
+  }
+
+  /**
+   * Fluent API to configure Query with the dialect of its <code>SQL</code>
+   *
+   * @param   dialect or null to choose from the metadata of each connection
+   *
+   * @return  this Query
+   *
+   * @see     SQL#dialect
+   */
+  Query dialect(Dialect dialect) {
+    this.dialect = dialect;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure Query to report slow windows
+   *
+   * @param   slowLog or null for none
+   *
+   * @return  this Query
+   *
+   * @see     SQL#slowLog
+   */
+  Query slowLog(SlowLog slowLog) {
+    this.slowLog = slowLog;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure Query to stream rows from the database rather
+   * than read each window into memory, as its <code>Dialect</code> does it:
+   * one row at a time from MySQL, or through a cursor in a transaction from
+   * PostgreSQL. An explicit <code>fetchSize</code> takes precedence. If
+   * <code>stream</code> is not called, the driver default is used.
+   *
+   * @param   stream true to stream rows
+   *
+   * @return  this Query
+   *
+   * @see     #fetchSize(int)
+   */
+  public Query stream(boolean stream) {
+    this.stream = stream;
+    return this;
+  }
+
+  /**
+   * Total the values of a column over the rows matching this
+   * <code>Query</code>, server-side
+   *
+   * @param   column name as it appears in the results
+   *
+   * @return  Observable total, or null if no row has a value
+   */
+  public Observable<Number> sum(String column) {
+    return aggregate("SUM(" + column + ")", 0, Query::add)
+      .map((value) -> (Number)value);
+  }
+
+  /*
+   * Add the totals of two shards
+   *
+   * @param   a total, or null
+   * @param   b total, or null
+   *
+   * @return  total, widened as necessary
+   */
+  private static Object add(Object a,
+                            Object b) {
+    if ((a == null) || (b == null))
+      return (a != null)? a : b;
+    if ((a instanceof BigDecimal) || (b instanceof BigDecimal) || (a instanceof BigInteger) || (b instanceof BigInteger))
+      return new BigDecimal(a.toString()).add(new BigDecimal(b.toString()));
+    if ((a instanceof Double) || (b instanceof Double) || (a instanceof Float) || (b instanceof Float))
+      return ((Number)a).doubleValue() + ((Number)b).doubleValue();
+    return ((Number)a).longValue() + ((Number)b).longValue();
+  }
+
+  /*
+   * Choose the more extreme of the values of two shards
+   *
+   * @param   a value, or null
+   * @param   b value, or null
+   * @param   sign 1 for the larger, -1 for the smaller
+   *
+   * @return  value
+   */
+  private static Object extreme(Object a,
+                                Object b,
+                                int sign) {
+    if ((a == null) || (b == null))
+      return (a != null)? a : b;
+    return (Integer.signum(OrderBy.compare(a, b)) * sign >= 0)? a : b;
+  }
+
+  /**
+   * Consumer of the current row of a <code>ResultSet</code>
+   */
+
+  private interface Row {
+
+    void accept(ResultSet rs,
+                Result.Schema schema) throws SQLException;
+
+    /**
+     * Receive the metadata of each window, before its rows, even when empty
+     *
+     * @param   rsMetaData
+     *
+     * @throws  SQLException
+     */
+    default void describe(ResultSetMetaData rsMetaData) throws SQLException { }
+
+  }
+
+  /**
+   * State of one subscription to a <code>Poll</code>
+   */
+
+  private class Tail implements Producer {
+
+    // private state
+    private final Poll poll;
+    private final OrderBy watermark;
+    private final OrderBy key;
+    private final DataSource ds;
+    private final Subscriber<? super Result> subscriber;
+    private final Scheduler.Worker worker = Schedulers.io().createWorker();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Map<String,Integer> firstOrdinals = new HashMap<>();
+    private final Map<String,Integer> nextOrdinals = new HashMap<>();
+    private Dialect dialect;
+    private String first;
+    private String next;
+    private Connection connection;
+    private PreparedStatement firstStmt;
+    private PreparedStatement nextStmt;
+    private boolean fetching = false;
+    private Object lastWatermark;
+    private Object lastKey;
+    private long interval = 0;
+
+    /**
+     * Construct one <code>Tail</code>
+     *
+     * @param   poll configuration and starting watermark
+     * @param   ds data source
+     * @param   subscriber
+     */
+    private Tail(Poll poll,
+                 DataSource ds,
+                 Subscriber<? super Result> subscriber) {
+      this.poll = poll;
+      this.watermark = new OrderBy.ASC(poll.getColumn());
+      this.key = (poll.getKey() != null)? new OrderBy.ASC(poll.getKey()) : null;
+      this.lastWatermark = poll.getWatermark();
+      this.lastKey = poll.getFromKey();
+      this.ds = ds;
+      this.subscriber = subscriber;
+      subscriber.add(worker);
+      subscriber.add(Subscriptions.create(this::unsubscribe));
+    }
+
+    /**
+     * Request more rows, starting the ticks on the first request
+     *
+     * @param   n number of rows
+     */
+    @Override public void request(long n) {
+      if (n <= 0)
+        return;
+      requested.getAndUpdate((r) -> (Long.MAX_VALUE - r < n)? Long.MAX_VALUE : r + n);
+      if (started.compareAndSet(false, true))
+        worker.schedule(this::tick);
+    }
+
+    /**
+     * Bind the watermark and key of the last row emitted, by name
+     *
+     * @param   stmt
+     * @param   ordinalByName
+     *
+     * @throws  SQLException
+     */
+    private void bind(PreparedStatement stmt,
+                      Map<String,Integer> ordinalByName) throws SQLException {
+      // positional parameters precede those of the poll, which are then in statement order
+      Object[] positional = (Object[])parameters.get(POSITIONAL);
+      int offset = (positional != null)? positional.length : -1;
+      stmt.setObject((offset < 0)? ordinalByName.get(WATERMARK) : offset + 1, lastWatermark);
+      if (key != null) {
+        stmt.setObject((offset < 0)? ordinalByName.get(WATERMARK_TIE) : offset + 2, lastWatermark);
+        stmt.setObject((offset < 0)? ordinalByName.get(KEY) : offset + 3, lastKey);
+      }
+    }
+
+    /**
+     * Retrieve and emit the rows beyond the watermark, on the connection and
+     * statements held from the last tick when it left them open
+     *
+     * @param   wanted maximum number of rows
+     *
+     * @return  number of rows emitted
+     *
+     * @throws  SQLException
+     */
+    private int fetch(long wanted) throws SQLException {
+      int count = 0;
+      if (connection == null)
+        connection = connect(ds);
+      if (dialect == null) {
+        dialect = Dialect.of(Query.this.dialect, connection);
+        first = preparePoll(dialect, poll, false, firstOrdinals);
+        next = preparePoll(dialect, poll, true, nextOrdinals);
+      }
+      boolean beyond = (lastWatermark != null);
+      Map<String,Integer> ordinalByName = beyond? nextOrdinals : firstOrdinals;
+      PreparedStatement stmt = beyond? nextStmt : firstStmt;
+      if (stmt == null) {
+        stmt = connection.prepareStatement(beyond? next : first);
+        configure(dialect, stmt);
+        if (beyond)
+          nextStmt = stmt;
+        else firstStmt = stmt;
+      }
+      boolean transactional = begin(dialect, connection);
+      try {
+        injectParameters(stmt, parameters, ordinalByName);
+        if (beyond)
+          bind(stmt, ordinalByName);
+        log.debug(stmt.toString());
+        try (ResultSet rs = stmt.executeQuery()) {
+          Result.Schema schema = Result.Schema.of(rs.getMetaData());
+          for (count = 0; (count < wanted) && rs.next() && !subscriber.isUnsubscribed(); count++) {
+            Result result = populate(rs, schema, null);
+            lastWatermark = watermark.valueOf(result);
+            if (key != null)
+              lastKey = key.valueOf(result);
+            subscriber.onNext(result);
+          }
+        }
+      }
+      finally {
+        if (transactional)
+          connection.setAutoCommit(true);
+      }
+      return count;
+    }
+
+    /*
+     * Close the statements and connection held from the last tick, if any
+     */
+    private void release() {
+      for (AutoCloseable held : new AutoCloseable[] { firstStmt, nextStmt, connection }) {
+        try {
+          if (held != null)
+            held.close();
+        }
+        catch (Exception e) {
+          log.warn("Failed to release poll connection: " + e.getMessage());
+        }
+      }
+      connection = null;
+      firstStmt = null;
+      nextStmt = null;
+    }
+
+    /*
+     * Release the connection on unsubscription, unless a tick on this thread
+     * is still using it, in which case the tick releases it
+     */
+    private synchronized void unsubscribe() {
+      if (!fetching)
+        release();
+    }
+
+    /**
+     * Run one tick and schedule the next. The connection is held while the
+     * next tick is immediate, and released while the Tail waits.
+     */
+    private synchronized void tick() {
+      if (subscriber.isUnsubscribed())
+        return;
+      try {
+        long wanted = Math.min(requested.get(), limit[1]);
+        if (wanted > 0) {
+          int count;
+          fetching = true;
+          try {
+            count = fetch(wanted);
+          }
+          finally {
+            fetching = false;
+          }
+          if (requested.get() != Long.MAX_VALUE)
+            requested.addAndGet(-count);
+          if (count == 0)
+            interval = Math.min(poll.getMaxInterval(), Math.max(poll.getMinInterval(), interval * 2));
+          else interval = (count == wanted)? 0 : poll.getMinInterval();
+        }
+        else interval = poll.getMinInterval();
+        if ((interval > 0) || subscriber.isUnsubscribed())
+          release();
+        if (!subscriber.isUnsubscribed())
+          worker.schedule(this::tick, interval, TimeUnit.MILLISECONDS);
+      }
+      catch (Throwable e) {
+        release();
+        worker.unsubscribe();
+        subscriber.onError(e);
+      }
+    }
+
+  }
+
 }
@@ -0,0 +1,390 @@
+package io.mflo.rxjava_sql;
+
+import java.io.PrintWriter;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model a primary <code>DataSource</code> and its read replicas
+ *
+ * <p>Replicas is itself a <code>DataSource</code> that hands out read connections:
+ * each connection comes from a healthy replica, chosen by the configured {@link Policy}.
+ * When an <code>SQL</code> is constructed from Replicas, every <code>Query</code> is
+ * routed to the replicas and every <code>Update</code> and <code>Batch</code> to the
+ * primary.</p>
+ *
+ * <p>A replica that fails to hand out a connection is ejected for a configurable period
+ * and the next candidate is tried. When no replica is healthy, reads fall back to
+ * the primary. An optional read-your-writes window routes reads to the primary for
+ * a period after each write.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Replicas implements DataSource {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Replicas.class);
+
+  /**
+   * Load balancing policy for read connections
+   */
+  public enum Policy {
+    /** Each replica in turn */
+    ROUND_ROBIN,
+    /** The replica with the fewest connections currently checked out */
+    LEAST_OUTSTANDING,
+    /** The replica with the lowest recent connection hold time, weighted by load */
+    LATENCY_WEIGHTED
+  }
+
+  // private state
+  private final DataSource primary;
+  private final List<Replica> replicas = new ArrayList<>();
+  private final AtomicInteger next = new AtomicInteger();
+  private final AtomicLong lastWrite = new AtomicLong();
+  private final DataSource writer;
+
+  // state accumulated by fluent API
+  private long ejectMillis = 30000;
+  private Policy policy = Policy.ROUND_ROBIN;
+  private long readYourWritesMillis = 0;
+
+  /**
+   * Construct <code>Replicas</code> from a primary and zero or more replicas
+   *
+   * @param   primary <code>DataSource</code> for all writes
+   * @param   replicas <code>DataSource</code>s for reads
+   */
+  public Replicas(DataSource primary,
+                  DataSource... replicas) {
+    this.primary = primary;
+    for (DataSource replica : replicas)
+      this.replicas.add(new Replica(replica));
+    this.writer = new Writer();
+  }
+
+  /**
+   * Fluent API to configure how long a failing replica is ejected
+   *
+   * @param   ejectMillis period in milliseconds
+   *
+   * @return  this Replicas
+   */
+  public Replicas ejectFor(long ejectMillis) {
+    this.ejectMillis = ejectMillis;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the load balancing policy. If <code>policy</code>
+   * is not called, replicas are chosen round-robin.
+   *
+   * @param   policy load balancing policy
+   *
+   * @return  this Replicas
+   */
+  public Replicas policy(Policy policy) {
+    this.policy = policy;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure a read-your-writes window, such that reads are routed
+   * to the primary for a period after each write completes. If
+   * <code>readYourWrites</code> is not called then reads always go to the replicas.
+   *
+   * @param   readYourWritesMillis window in milliseconds; zero means none
+   *
+   * @return  this Replicas
+   */
+  public Replicas readYourWrites(long readYourWritesMillis) {
+    this.readYourWritesMillis = readYourWritesMillis;
+    return this;
+  }
+
+  /**
+   * Access the primary as a <code>DataSource</code> that opens the
+   * read-your-writes window whenever one of its connections writes, and
+   * again when it is closed after writing
+   *
+   * @return  writer <code>DataSource</code>
+   */
+  public DataSource getWriter() {
+    return writer;
+  }
+
+  /**
+   * Count the replicas that are not currently ejected
+   *
+   * @return  count of healthy replicas
+   */
+  public int getHealthy() {
+    int healthy = 0;
+    long now = System.currentTimeMillis();
+    for (Replica replica : replicas)
+      if (replica.isHealthy(now))
+        healthy++;
+    return healthy;
+  }
+
+  /**
+   * Resolve the <code>DataSource</code> that writes should use
+   *
+   * @param   ds any <code>DataSource</code>
+   *
+   * @return  writer if <code>ds</code> is Replicas, otherwise <code>ds</code> itself
+   */
+  static DataSource writer(DataSource ds) {
+    return (ds instanceof Replicas)? ((Replicas)ds).getWriter() : ds;
+  }
+
+  /**
+   * Get a read connection
+   *
+   * @return  connection from a healthy replica, or from the primary
+   *
+   * @throws  SQLException when the primary fails too
+   */
+  @Override public Connection getConnection() throws SQLException {
+    long now = System.currentTimeMillis();
+    if ((readYourWritesMillis > 0) && (now - lastWrite.get() < readYourWritesMillis))
+      return primary.getConnection();
+    for (Replica replica : candidates(now)) {
+      try {
+        return replica.getConnection();
+      }
+      catch (SQLException e) {
+        log.warn("Ejecting replica for " + ejectMillis + "ms: " + e.getMessage());
+        replica.eject(System.currentTimeMillis() + ejectMillis);
+      }
+    }
+    return primary.getConnection();
+  }
+
+  /**
+   * Get a read connection -- credentials are not supported
+   */
+  @Override public Connection getConnection(String username,
+                                            String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("Replicas does not support credentials");
+  }
+
+  @Override public PrintWriter getLogWriter() throws SQLException {
+    return primary.getLogWriter();
+  }
+
+  @Override public void setLogWriter(PrintWriter out) throws SQLException {
+    primary.setLogWriter(out);
+  }
+
+  @Override public void setLoginTimeout(int seconds) throws SQLException {
+    primary.setLoginTimeout(seconds);
+    for (Replica replica : replicas)
+      replica.ds.setLoginTimeout(seconds);
+  }
+
+  @Override public int getLoginTimeout() throws SQLException {
+    return primary.getLoginTimeout();
+  }
+
+  @Override public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return primary.getParentLogger();
+  }
+
+  @Override public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this))
+      return iface.cast(this);
+    if (primary.isWrapperFor(iface))
+      return primary.unwrap(iface);
+    throw new SQLException("Replicas is not a wrapper for " + iface.getName());
+  }
+
+  @Override public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || primary.isWrapperFor(iface);
+  }
+
+  /*
+   * Order the healthy replicas by preference according to the policy
+   *
+   * @param   now current time
+   *
+   * @return  candidates, most preferred first
+   */
+  private List<Replica> candidates(long now) {
+    List<Replica> healthy = new ArrayList<>();
+    for (Replica replica : replicas)
+      if (replica.isHealthy(now))
+        healthy.add(replica);
+    if (healthy.size() > 1) {
+      switch (policy) {
+        case ROUND_ROBIN:
+          int start = Math.floorMod(next.getAndIncrement(), healthy.size());
+          List<Replica> rotated = new ArrayList<>(healthy.subList(start, healthy.size()));
+          rotated.addAll(healthy.subList(0, start));
+          return rotated;
+        case LEAST_OUTSTANDING:
+          healthy.sort((a, b) -> Integer.compare(a.outstanding.get(), b.outstanding.get()));
+          break;
+        case LATENCY_WEIGHTED:
+          healthy.sort((a, b) -> Double.compare(a.weight(), b.weight()));
+          break;
+      }
+    }
+    return healthy;
+  }
+
+  /**
+   * The primary, stamping the time of each completed write
+   */
+
+  private class Writer implements DataSource {
+
+    @Override public Connection getConnection() throws SQLException {
+      return stamp(primary.getConnection());
+    }
+
+    @Override public Connection getConnection(String username,
+                                              String password) throws SQLException {
+      return stamp(primary.getConnection(username, password));
+    }
+
+    @Override public PrintWriter getLogWriter() throws SQLException {
+      return primary.getLogWriter();
+    }
+
+    @Override public void setLogWriter(PrintWriter out) throws SQLException {
+      primary.setLogWriter(out);
+    }
+
+    @Override public void setLoginTimeout(int seconds) throws SQLException {
+      primary.setLoginTimeout(seconds);
+    }
+
+    @Override public int getLoginTimeout() throws SQLException {
+      return primary.getLoginTimeout();
+    }
+
+    @Override public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      return primary.getParentLogger();
+    }
+
+    @Override public <T> T unwrap(Class<T> iface) throws SQLException {
+      return primary.unwrap(iface);
+    }
+
+    @Override public boolean isWrapperFor(Class<?> iface) throws SQLException {
+      return primary.isWrapperFor(iface);
+    }
+
+    /*
+     * Wrap a primary connection to stamp the time of each write, and again
+     * when the connection is closed after a write, by which time it has been
+     * committed; connections used only to read are not stamped
+     *
+     * @param   connection to the primary
+     *
+     * @return  wrapped connection
+     */
+    private Connection stamp(Connection connection) {
+      AtomicBoolean written = new AtomicBoolean(false);
+      Runnable onWrite = () -> {
+        written.set(true);
+        lastWrite.set(System.currentTimeMillis());
+      };
+      return Connections.onClose(Connections.onWrite(connection, onWrite), () -> {
+          if (written.get())
+            lastWrite.set(System.currentTimeMillis());
+        });
+    }
+
+  }
+
+  /**
+   * One replica and its health and load statistics
+   */
+
+  private static class Replica {
+
+    // smoothing factor for hold time average
+    private static final double ALPHA = 0.2;
+
+    // private state
+    private final DataSource ds;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile long ejectedUntil = 0;
+    private volatile double holdMillis = 0;
+
+    /**
+     * Construct one <code>Replica</code>
+     *
+     * @param   ds replica data source
+     */
+    private Replica(DataSource ds) {
+      this.ds = ds;
+    }
+
+    /**
+     * Eject this replica
+     *
+     * @param   until time at which the replica is healthy again
+     */
+    private void eject(long until) {
+      ejectedUntil = until;
+    }
+
+    /**
+     * Get a connection, tracking load and hold time
+     *
+     * @return  connection
+     *
+     * @throws  SQLException when the replica fails
+     */
+    private Connection getConnection() throws SQLException {
+      Connection connection = ds.getConnection();
+      long start = System.nanoTime();
+      outstanding.incrementAndGet();
+      return Connections.onClose(connection, () -> {
+          outstanding.decrementAndGet();
+          double elapsed = (System.nanoTime() - start) / 1e6;
+          holdMillis = (holdMillis == 0)? elapsed : (ALPHA * elapsed) + ((1 - ALPHA) * holdMillis);
+        });
+    }
+
+    /**
+     * Tests if this replica is not ejected
+     *
+     * @param   now current time
+     *
+     * @return  true or false as appropriate
+     */
+    private boolean isHealthy(long now) {
+      return now >= ejectedUntil;
+    }
+
+    /**
+     * Calculate the latency weight of this replica -- lower is better
+     *
+     * @return  weight
+     */
+    private double weight() {
+      return holdMillis * (outstanding.get() + 1);
+    }
+
+  }
+
+}
@@ -1,5 +1,8 @@
 package io.mflo.rxjava_sql;
 
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -15,6 +18,18 @@ import org.slf4j.LoggerFactory;
 /**
  * Model an individual Result from an SQL query as a Tuple.
  *
+ * <p>A Result is immutable. Its names are held in a {@link Schema} that is
+ * shared by all the Results of one query window, and its values in an array.
+ * A Result derived from another with deltas shares the other's schema and
+ * values, and holds only the deltas in a small overlay, so that deriving a
+ * Result costs in proportion to the number of changed values rather than
+ * the number of columns. Names added by deltas follow the original names in
+ * ordinal sequence.</p>
+ *
+ * <p>Columns that share a label, as in a join of two tables' ids, are each
+ * kept by ordinal in {@link #get(int)}, {@link #getElements} and
+ * {@link #toArray}; by name, the last of them wins.</p>
+ *
  * @author      http://mflo.io
  * @version     0.0.1
  */
@@ -24,15 +39,19 @@ public final class Result implements Tuple {
   // logger for this class
   private static final Logger log = LoggerFactory.getLogger(Result.class);
 
+  // the empty schema
+  private static final Schema EMPTY = new Schema(new String[0]);
+
   // name/value state
-  private final LinkedHashMap<String,Object> attributes;
-  private final Map<Integer,String> nameByOrdinal = new HashMap<>();
+  private final Schema schema;
+  private final Object[] values;
+  private final LinkedHashMap<String,Object> overlay;
 
   /**
    * Construct an empty <code>Result</code>
    */
   public Result() {
-    this((LinkedHashMap)null);
+    this(EMPTY, new Object[0]);
   }
 
   /**
@@ -46,14 +65,23 @@ public final class Result implements Tuple {
 
   /**
    * Construct one <code>Result</code> as the shallow clone of another
-   * PLUS a Map of accumulated deltas
+   * PLUS a Map of accumulated deltas. The other Result is not changed.
    *
    * @param   another <code>Result</code>
    * @param   deltas <code>Map</code> of accumulated deltas
    */
   public Result(Result another,
                 Map<String,Object> deltas) {
-    this((another != null)? another.attributes : (LinkedHashMap)null, deltas);
+    if (another == null)
+      another = new Result();
+    this.schema = another.schema;
+    this.values = another.values;
+    if (deltas == null || deltas.isEmpty())
+      this.overlay = another.overlay;
+    else {
+      this.overlay = (another.overlay != null)? new LinkedHashMap<>(another.overlay) : new LinkedHashMap<>();
+      this.overlay.putAll(deltas);
+    }
   }
 
   /**
@@ -74,15 +102,22 @@ public final class Result implements Tuple {
    */
   protected Result(LinkedHashMap<String,Object> attributes,
                    Map<String,Object> deltas) {
-    this.attributes = (attributes != null)? attributes : new LinkedHashMap<>();
-    int ordinal = 1;
-    for (String name : this.attributes.keySet())
-      nameByOrdinal.put(ordinal++, name);
-    // after ordinal has been calculated, apply deltas if any
-    if (deltas != null) {
-      for (String name : deltas.keySet())
-        this.attributes.put(name, deltas.get(name));
-    }
+    this(new Result((attributes != null)? new Schema(attributes.keySet().toArray(new String[0])) : EMPTY,
+                    (attributes != null)? attributes.values().toArray() : new Object[0]),
+         deltas);
+  }
+
+  /**
+   * Construct one <code>Result</code> from a shared schema and its values
+   *
+   * @param   schema names, shared by many Results
+   * @param   values in schema order, owned by this Result
+   */
+  Result(Schema schema,
+         Object[] values) {
+    this.schema = schema;
+    this.values = values;
+    this.overlay = null;
   }
 
   /**
@@ -93,10 +128,17 @@ public final class Result implements Tuple {
    * @return  value
    */
   @Override public Object get(int ordinal) {
-    String name = nameByOrdinal.get(ordinal);
-    if (name == null)
-      throw new IllegalArgumentException("Ordinal out-of-range [" + ordinal + "]");
-    return get(name);
+    if (ordinal >= 1 && ordinal <= schema.names.length) {
+      if (overlay == null)
+        return values[ordinal - 1];
+      String name = schema.names[ordinal - 1];
+      return overlay.containsKey(name)? overlay.get(name) : values[ordinal - 1];
+    }
+    List<String> extras = extras();
+    int extra = ordinal - schema.names.length;
+    if (extra >= 1 && extra <= extras.size())
+      return overlay.get(extras.get(extra - 1));
+    throw new IllegalArgumentException("Ordinal out-of-range [" + ordinal + "]");
   }
 
   /**
@@ -125,9 +167,12 @@ public final class Result implements Tuple {
    * @return  value
    */
   @Override public Object get(String name) {
-    if (!has(name))
+    if (overlay != null && overlay.containsKey(name))
+      return overlay.get(name);
+    Integer index = schema.indexByName.get(name);
+    if (index == null)
       throw new IllegalArgumentException("Unknown name [" + name + "]");
-    return attributes.get(name);
+    return values[index];
   }
 
   /**
@@ -166,10 +211,11 @@ public final class Result implements Tuple {
    */
   @Override public List<TupleElement<?>> getElements() {
     List<TupleElement<?>> elements = new ArrayList<>();
-    for (String name : attributes.keySet()) {
-      Object value = attributes.get(name);
-      Class type = (value != null)? value.getClass() : null;
-      elements.add(new Element(name, type));
+    List<String> extras = extras();
+    Object[] array = toArray();
+    for (int i = 0; i < array.length; i++) {
+      Class type = (array[i] != null)? array[i].getClass() : null;
+      elements.add(new Element((i < schema.names.length)? schema.names[i] : extras.get(i - schema.names.length), type));
     }
     return elements;
   }
@@ -182,7 +228,7 @@ public final class Result implements Tuple {
    * @return  true or false as appropriate
    */
   public boolean has(String name) {
-    return attributes.containsKey(name);
+    return schema.has(name) || (overlay != null && overlay.containsKey(name));
   }
 
   /**
@@ -191,7 +237,21 @@ public final class Result implements Tuple {
    * @return  name/value pairs
    */
   protected Map<String,Object> getAttributes() {
-    return new HashMap<>(attributes);
+    return new HashMap<>(flatten());
+  }
+
+  /**
+   * Combine two Results into one, as for a join. Where both have a value
+   * of the same name, the value from <code>right</code> wins.
+   *
+   * @param   left <code>Result</code>
+   * @param   right <code>Result</code>
+   *
+   * @return  combined <code>Result</code>
+   */
+  static Result join(Result left,
+                     Result right) {
+    return new Result(left, right.flatten());
   }
 
   /**
@@ -200,7 +260,15 @@ public final class Result implements Tuple {
    * @return  values
    */
   @Override public Object[] toArray() {
-    return attributes.values().toArray();
+    if (overlay == null)
+      return values.clone();
+    List<String> extras = extras();
+    Object[] array = new Object[schema.names.length + extras.size()];
+    for (int i = 0; i < schema.names.length; i++)
+      array[i] = get(i + 1);
+    for (int i = 0; i < extras.size(); i++)
+      array[schema.names.length + i] = overlay.get(extras.get(i));
+    return array;
   }
 
   /**
@@ -209,14 +277,131 @@ public final class Result implements Tuple {
    * @return  stringified representation of <code>Result</code>
    */
   @Override public String toString() {
-    return attributes.toString();
+    return flatten().toString();
+  }
+
+  /*
+   * List the names added by deltas, which follow the schema in ordinal sequence
+   *
+   * @return  names not in the schema
+   */
+  private List<String> extras() {
+    List<String> extras = new ArrayList<>();
+    if (overlay != null) {
+      for (String name : overlay.keySet())
+        if (!schema.has(name))
+          extras.add(name);
+    }
+    return extras;
+  }
+
+  /*
+   * Flatten the schema, values and overlay into name/value pairs in ordinal sequence
+   *
+   * @return  name/value pairs
+   */
+  private LinkedHashMap<String,Object> flatten() {
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    for (int i = 0; i < schema.names.length; i++)
+      attributes.put(schema.names[i], values[i]);
+    if (overlay != null)
+      attributes.putAll(overlay);
+    return attributes;
+  }
+
+  /**
+   * Names of the values of a Result, shared by all the Results of one query window
+   */
+
+  static final class Schema {
+
+    // private state
+    private final String[] names;
+    private final Map<String,Integer> indexByName = new HashMap<>();
+
+    /**
+     * Construct one <code>Schema</code>
+     *
+     * @param   names in ordinal sequence
+     */
+    Schema(String[] names) {
+      this.names = names;
+      for (int i = 0; i < names.length; i++)
+        indexByName.put(names[i], i);
+    }
+
+    /**
+     * Construct one <code>Schema</code> from the columns of a <code>ResultSet</code>,
+     * preferring each column's label to its name
+     *
+     * @param   rsMetaData describes the columns
+     *
+     * @return  schema
+     *
+     * @throws  SQLException if the metadata can't be read
+     */
+    static Schema of(ResultSetMetaData rsMetaData) throws SQLException {
+      String[] names = new String[rsMetaData.getColumnCount()];
+      for (int i = 1; i <= names.length; i++) {
+        String identifier = rsMetaData.getColumnName(i);
+        String alias = rsMetaData.getColumnLabel(i);
+        if (alias != null)
+          identifier = alias;
+        names[i - 1] = identifier;
+      }
+      return new Schema(names);
+    }
+
+    /**
+     * Access a name by index
+     *
+     * @param   index position, relative to 0
+     *
+     * @return  name
+     */
+    String getName(int index) {
+      return names[index];
+    }
+
+    /**
+     * Find the index of a name
+     *
+     * @param   name
+     *
+     * @return  position, relative to 0, or -1 if the name is not in this schema
+     */
+    int indexOf(String name) {
+      Integer index = indexByName.get(name);
+      return (index != null)? index : -1;
+    }
+
+    /**
+     * Count the names
+     *
+     * @return  count
+     */
+    int size() {
+      return names.length;
+    }
+
+    /**
+     * Tests if a name is in this schema
+     *
+     * @param   name
+     *
+     * @return  true or false as appropriate
+     */
+    private boolean has(String name) {
+      return indexByName.containsKey(name);
+    }
+
   }
 
   /**
    * Thin implementation of TupleElement
    */
 
-  private static class Element implements TupleElement {
+  static class Element implements TupleElement {
 
     // private state
     private final String name;
@@ -226,10 +411,10 @@ public final class Result implements Tuple {
      * Construct one <code>TupleElement</code>
      *
      * @param   name
-     * @param   tuype
+     * @param   type
      */
-    private Element(String name,
-                    Class type) {
+    Element(String name,
+            Class type) {
       this.name = name;
       this.type = type;
     }
@@ -0,0 +1,495 @@
+package io.mflo.rxjava_sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import javax.persistence.TupleElement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model a temporary file of Results in a compact binary row format
+ *
+ * <p>The column names are written once, at the start of the file, and each
+ * value is written as a one byte type tag followed by its payload. Once
+ * finished, the file is memory-mapped in segments for reading, and rows are
+ * decoded lazily as they are read. A <code>Lob</code> is read into the file
+ * as bytes or characters, and so is decoded as a <code>byte[]</code> or a
+ * <code>String</code>; values of types without a tag are serialized.</p>
+ *
+ * <p>All the Results written are expected to share the same columns, as
+ * Query results do. A RowFile must be closed to delete its file.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+final class RowFile implements AutoCloseable {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(RowFile.class);
+
+  // size of write buffer
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  // maximum size of one mapped segment of the file
+  private static final long SEGMENT_SIZE = 1 << 30;
+
+  // value type tags
+  private static final byte NULL = 0;
+  private static final byte INT = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte FLOAT = 4;
+  private static final byte STRING = 5;
+  private static final byte BYTES = 6;
+  private static final byte BIG_DECIMAL = 7;
+  private static final byte BIG_INTEGER = 8;
+  private static final byte TIMESTAMP = 9;
+  private static final byte DATE = 10;
+  private static final byte TIME = 11;
+  private static final byte BOOLEAN = 12;
+  private static final byte SHORT = 13;
+  private static final byte BYTE = 14;
+  private static final byte SERIALIZED = 15;
+
+  // private state
+  private final File file;
+  private final RandomAccessFile raf;
+  private final Encoder out;
+  private final List<long[]> bounds = new ArrayList<>();
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  private final List<Integer> rowsBySegment = new ArrayList<>();
+  private Result.Schema schema = null;
+  private boolean closed = false;
+  private boolean finished = false;
+  private long start = 0;
+  private int rows = 0;
+  private int size = 0;
+
+  /**
+   * Construct a <code>RowFile</code> backed by a new temporary file
+   *
+   * @param   prefix of the file name
+   * @param   directory for the file, or null for the system default
+   *
+   * @throws  IOException if the file can't be created
+   */
+  RowFile(String prefix,
+          File directory) throws IOException {
+    this.file = File.createTempFile(prefix, ".bin", directory);
+    this.file.deleteOnExit();
+    this.raf = new RandomAccessFile(file, "rw");
+    this.out = new Encoder(raf.getChannel());
+  }
+
+  /**
+   * Delete the file backing this <code>RowFile</code>
+   */
+  @Override public void close() {
+    if (closed)
+      return;
+    closed = true;
+    segments.clear();
+    rowsBySegment.clear();
+    try {
+      raf.close();
+    }
+    catch (IOException e) {
+      log.warn("Failed to close " + file + ": " + e.getMessage());
+    }
+    if (!file.delete())
+      log.warn("Failed to delete " + file);
+  }
+
+  /**
+   * Access the file backing this <code>RowFile</code>
+   *
+   * @return  file
+   */
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * Read back every Result, finishing the file first if necessary
+   *
+   * @param   reader consumer of each Result, which returns false to stop reading
+   *
+   * @throws  IOException
+   * @throws  ClassNotFoundException if a serialized value can't be decoded
+   */
+  void read(Predicate<Result> reader) throws IOException, ClassNotFoundException {
+    finish();
+    for (int i = 0; i < segments.size(); i++) {
+      ByteBuffer segment = segments.get(i).duplicate();
+      for (int j = 0; j < rowsBySegment.get(i); j++)
+        if (!reader.test(decode(segment)))
+          return;
+    }
+  }
+
+  /**
+   * Count the Results written
+   *
+   * @return  number of Results
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Write one Result
+   *
+   * @param   result
+   *
+   * @throws  IOException
+   * @throws  IllegalArgumentException if the Result doesn't have the columns of the first
+   */
+  void write(Result result) throws IOException {
+    if (finished)
+      throw new IllegalStateException("RowFile is finished");
+    Object[] values = result.toArray();
+    if (schema == null) {
+      List<TupleElement<?>> elements = result.getElements();
+      String[] names = new String[elements.size()];
+      out.putInt(names.length);
+      for (int i = 0; i < names.length; i++) {
+        names[i] = elements.get(i).getAlias();
+        out.putBytes(names[i].getBytes(StandardCharsets.UTF_8));
+      }
+      schema = new Result.Schema(names);
+      start = out.position();
+    }
+    if (values.length != schema.size())
+      throw new IllegalArgumentException("Spilled Results must share the same columns");
+    if (out.position() - start >= SEGMENT_SIZE) {
+      bounds.add(new long[] { start, out.position(), rows });
+      start = out.position();
+      rows = 0;
+    }
+    for (Object value : values)
+      encodeValue(out, value);
+    rows++;
+    size++;
+  }
+
+  /*
+   * Decode one Result
+   *
+   * @param   in positioned at the start of a row
+   *
+   * @return  Result
+   *
+   * @throws  IOException
+   * @throws  ClassNotFoundException
+   */
+  private Result decode(ByteBuffer in) throws IOException, ClassNotFoundException {
+    Object[] values = new Object[schema.size()];
+    for (int i = 0; i < values.length; i++)
+      values[i] = decodeValue(in);
+    return new Result(schema, values);
+  }
+
+  /*
+   * Decode one value
+   *
+   * @param   in positioned at a type tag
+   *
+   * @return  value
+   *
+   * @throws  IOException
+   * @throws  ClassNotFoundException
+   */
+  private static Object decodeValue(ByteBuffer in) throws IOException, ClassNotFoundException {
+    byte tag = in.get();
+    switch (tag) {
+      case NULL:
+        return null;
+      case INT:
+        return in.getInt();
+      case LONG:
+        return in.getLong();
+      case DOUBLE:
+        return in.getDouble();
+      case FLOAT:
+        return in.getFloat();
+      case STRING:
+        return new String(bytes(in), StandardCharsets.UTF_8);
+      case BYTES:
+        return bytes(in);
+      case BIG_DECIMAL:
+        int scale = in.getInt();
+        return new BigDecimal(new BigInteger(bytes(in)), scale);
+      case BIG_INTEGER:
+        return new BigInteger(bytes(in));
+      case TIMESTAMP:
+        Timestamp timestamp = new Timestamp(in.getLong());
+        timestamp.setNanos(in.getInt());
+        return timestamp;
+      case DATE:
+        return new Date(in.getLong());
+      case TIME:
+        return new Time(in.getLong());
+      case BOOLEAN:
+        return in.get() != 0;
+      case SHORT:
+        return in.getShort();
+      case BYTE:
+        return in.get();
+      case SERIALIZED:
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes(in)))) {
+          return ois.readObject();
+        }
+      default:
+        throw new IOException("Corrupt row file: unknown type tag [" + tag + "]");
+    }
+  }
+
+  /*
+   * Decode a length-prefixed byte array
+   *
+   * @param   in
+   *
+   * @return  bytes
+   */
+  private static byte[] bytes(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return bytes;
+  }
+
+  /*
+   * Encode one value
+   *
+   * @param   out
+   * @param   value
+   *
+   * @throws  IOException
+   */
+  private static void encodeValue(Encoder out,
+                                  Object value) throws IOException {
+    if (value == null)
+      out.put(NULL);
+    else if (value instanceof Integer)
+      out.put(INT).putInt((Integer)value);
+    else if (value instanceof Long)
+      out.put(LONG).putLong((Long)value);
+    else if (value instanceof Double)
+      out.put(DOUBLE).putDouble((Double)value);
+    else if (value instanceof Float)
+      out.put(FLOAT).putFloat((Float)value);
+    else if (value instanceof String)
+      out.put(STRING).putBytes(((String)value).getBytes(StandardCharsets.UTF_8));
+    else if (value instanceof byte[])
+      out.put(BYTES).putBytes((byte[])value);
+    else if (value instanceof BigDecimal)
+      out.put(BIG_DECIMAL).putInt(((BigDecimal)value).scale()).putBytes(((BigDecimal)value).unscaledValue().toByteArray());
+    else if (value instanceof BigInteger)
+      out.put(BIG_INTEGER).putBytes(((BigInteger)value).toByteArray());
+    else if (value instanceof Timestamp)
+      out.put(TIMESTAMP).putLong(((Timestamp)value).getTime()).putInt(((Timestamp)value).getNanos());
+    else if (value instanceof Date)
+      out.put(DATE).putLong(((Date)value).getTime());
+    else if (value instanceof Time)
+      out.put(TIME).putLong(((Time)value).getTime());
+    else if (value instanceof Boolean)
+      out.put(BOOLEAN).put((byte)(((Boolean)value)? 1 : 0));
+    else if (value instanceof Short)
+      out.put(SHORT).putShort((Short)value);
+    else if (value instanceof Byte)
+      out.put(BYTE).put((Byte)value);
+    else if (value instanceof Lob)
+      encodeLob(out, (Lob)value);
+    else {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+        oos.writeObject(value);
+      }
+      out.put(SERIALIZED).putBytes(bytes.toByteArray());
+    }
+  }
+
+  /*
+   * Encode a large object as its characters or bytes
+   *
+   * @param   out
+   * @param   lob still readable, or spilled
+   *
+   * @throws  IOException if the Lob can't be read
+   */
+  private static void encodeLob(Encoder out,
+                                Lob lob) throws IOException {
+    try {
+      if (lob.isCharacter()) {
+        StringBuilder sb = new StringBuilder();
+        char[] chars = new char[BUFFER_SIZE / 2];
+        try (Reader in = lob.getCharacterStream()) {
+          for (int n; (n = in.read(chars)) != -1; )
+            sb.append(chars, 0, n);
+        }
+        out.put(STRING).putBytes(sb.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      else {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = lob.getBinaryStream()) {
+          for (int n; (n = in.read(buffer)) != -1; )
+            bytes.write(buffer, 0, n);
+        }
+        out.put(BYTES).putBytes(bytes.toByteArray());
+      }
+    }
+    catch (SQLException e) {
+      throw new IOException("Failed to read Lob: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Flush what was written and map the file for reading, once; no more
+   * Results can be written
+   *
+   * @throws  IOException
+   */
+  void finish() throws IOException {
+    if (finished)
+      return;
+    finished = true;
+    if (size == 0)
+      return;
+    bounds.add(new long[] { start, out.position(), rows });
+    out.flush();
+    for (long[] bound : bounds) {
+      segments.add(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, bound[0], bound[1] - bound[0]));
+      rowsBySegment.add((int)bound[2]);
+    }
+    bounds.clear();
+  }
+
+  /**
+   * Encode values through a reused buffer into a file channel
+   */
+
+  private static class Encoder {
+
+    // private state
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Construct one <code>Encoder</code>
+     *
+     * @param   channel to write to
+     */
+    private Encoder(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Write the buffer to the channel
+     *
+     * @throws  IOException
+     */
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+      buffer.clear();
+    }
+
+    /**
+     * Calculate the offset in the file of the next byte written
+     *
+     * @return  offset
+     *
+     * @throws  IOException
+     */
+    private long position() throws IOException {
+      return channel.position() + buffer.position();
+    }
+
+    private Encoder put(byte value) throws IOException {
+      room(1).put(value);
+      return this;
+    }
+
+    private Encoder putBytes(byte[] value) throws IOException {
+      putInt(value.length);
+      if (value.length > buffer.capacity()) {
+        flush();
+        ByteBuffer wrapped = ByteBuffer.wrap(value);
+        while (wrapped.hasRemaining())
+          channel.write(wrapped);
+      }
+      else room(value.length).put(value);
+      return this;
+    }
+
+    private Encoder putDouble(double value) throws IOException {
+      room(8).putDouble(value);
+      return this;
+    }
+
+    private Encoder putFloat(float value) throws IOException {
+      room(4).putFloat(value);
+      return this;
+    }
+
+    private Encoder putInt(int value) throws IOException {
+      room(4).putInt(value);
+      return this;
+    }
+
+    private Encoder putLong(long value) throws IOException {
+      room(8).putLong(value);
+      return this;
+    }
+
+    private Encoder putShort(short value) throws IOException {
+      room(2).putShort(value);
+      return this;
+    }
+
+    /**
+     * Ensure there is room in the buffer, flushing it as necessary
+     *
+     * @param   needed number of bytes
+     *
+     * @return  buffer
+     *
+     * @throws  IOException
+     */
+    private ByteBuffer room(int needed) throws IOException {
+      if (buffer.remaining() < needed)
+        flush();
+      return buffer;
+    }
+
+  }
+
+}
@@ -2,19 +2,30 @@ package io.mflo.rxjava_sql;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 
+import java.sql.SQLException;
+
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import rx.Observable;
+
 /**
  * Initiate SQL operations against a <code>DataSource</code>.
  *
+ * <p>When the <code>DataSource</code> is a {@link Replicas}, queries are routed
+ * to the replicas and updates and batches to the primary.</p>
+ *
+ * <p>When constructed from {@link Shards}, statements are routed by shard key.</p>
+ *
  * @author      http://mflo.io
  * @version     0.0.1
  */
@@ -26,6 +37,14 @@ public final class SQL {
 
   // private state
   private final DataSource ds;
+  private final DataSource writer;
+  private final Shards shards;
+  private final Map<String,Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+  // state accumulated by fluent API
+  private Dialect dialect = null;
+  private SlowLog slowLog = null;
+  private WriteBehind writeBehind = null;
 
   /**
    * Construct an <code>SQL</code> from a <code>DataSource</code>
@@ -34,6 +53,19 @@ public final class SQL {
    */
   public SQL(DataSource ds) {
     this.ds = ds;
+    this.writer = Replicas.writer(ds);
+    this.shards = null;
+  }
+
+  /**
+   * Construct an <code>SQL</code> from a set of <code>Shards</code>
+   *
+   * @param   shards <code>Shards</code>
+   */
+  public SQL(Shards shards) {
+    this.ds = null;
+    this.writer = null;
+    this.shards = shards;
   }
 
   /**
@@ -64,7 +96,92 @@ public final class SQL {
    * @return  <code>Batch</code> to be configured by fluent API
    */
   public Batch batch(List<String> sqls) {
-    return new Batch(sqls, ds);
+    if (shards != null) {
+      List<DataSource> writers = new ArrayList<>();
+      for (DataSource shard : shards.getShards())
+        writers.add(Replicas.writer(shard));
+      return new Batch(sqls, writers);
+    }
+    return new Batch(sqls, writer);
+  }
+
+  /**
+   * Fluent API to configure SQL with admission control for a category of
+   * queries and updates, including those already created. If
+   * <code>bulkhead</code> is not called for a category, its queries and
+   * updates are admitted without limit.
+   *
+   * @param   category name, or <code>Bulkhead.DEFAULT</code> for queries and
+   *          updates that don't name one
+   * @param   bulkhead limits, or null for none
+   *
+   * @return  this SQL
+   *
+   * @see     Query#category
+   * @see     Update#category
+   */
+  public SQL bulkhead(String category,
+                      Bulkhead bulkhead) {
+    if (bulkhead == null)
+      bulkheads.remove(category);
+    else bulkheads.put(category, bulkhead);
+    return this;
+  }
+
+  /**
+   * Fluent API to configure SQL with the dialect of its database, for queries,
+   * updates and loads created afterwards. If <code>dialect</code> is not
+   * called, the dialect is chosen from the metadata of each connection.
+   *
+   * @param   dialect such as <code>Dialect.POSTGRESQL</code>, or null to choose
+   *
+   * @return  this SQL
+   */
+  public SQL dialect(Dialect dialect) {
+    this.dialect = dialect;
+    return this;
+  }
+
+  /**
+   * Execute every Update buffered for write-behind, for example at shutdown
+   *
+   * @throws  SQLException when any buffered Update fails
+   */
+  public void flush() throws SQLException {
+    if (writeBehind != null)
+      writeBehind.flush();
+  }
+
+  /**
+   * Create a bulk <code>Load</code> of a table from an Observable
+   *
+   * @param   table to be loaded
+   * @param   source of Results, such as a Query of another <code>SQL</code>
+   *
+   * @return  <code>Load</code> to be configured by fluent API
+   *
+   * @throws  IllegalStateException when this SQL is sharded
+   */
+  public Load load(String table,
+                   Observable<Result> source) {
+    if (shards != null)
+      throw new IllegalStateException("Bulk load is not supported when sharded");
+    return new Load(table, source, writer).dialect(dialect);
+  }
+
+  /**
+   * Create a bulk <code>Load</code> of a table from a Query
+   *
+   * @param   table to be loaded
+   * @param   query of Results, typically from another <code>SQL</code>
+   *
+   * @return  <code>Load</code> to be configured by fluent API
+   *
+   * @throws  IllegalStateException when this SQL is sharded
+   */
+  public Load load(String table,
+                   Query query) {
+    return load(table, query.execute());
   }
 
   /**
@@ -75,7 +192,21 @@ public final class SQL {
    * @return  <code>Query</code> to be configured by fluent API
    */
   public Query query(String sql) {
-    return new Query(sql, ds);
+    return new Query(sql, ds, shards).bulkheads(bulkheads).dialect(dialect).slowLog(slowLog);
+  }
+
+  /**
+   * Fluent API to configure SQL to report slow queries and updates created
+   * after this call. If <code>slowLog</code> is not called then slow
+   * statements are not reported.
+   *
+   * @param   slowLog detector and sink, or null for none
+   *
+   * @return  this SQL
+   */
+  public SQL slowLog(SlowLog slowLog) {
+    this.slowLog = slowLog;
+    return this;
   }
 
   /**
@@ -86,7 +217,23 @@ public final class SQL {
    * @return  <code>Update</code> to be configured by fluent API
    */
   public Update update(String sql) {
-    return new Update(sql, ds);
+    return new Update(sql, writer, shards).bulkheads(bulkheads).dialect(dialect).slowLog(slowLog).writeBehind(writeBehind);
+  }
+
+  /**
+   * Fluent API to configure SQL to coalesce updates created after this call
+   * when they are enqueued. If <code>writeBehind</code> is not called then
+   * enqueued updates are executed immediately.
+   *
+   * @param   writeBehind buffer, or null for none
+   *
+   * @return  this SQL
+   *
+   * @see     Update#enqueue
+   */
+  public SQL writeBehind(WriteBehind writeBehind) {
+    this.writeBehind = writeBehind;
+    return this;
   }
 
 }
@@ -0,0 +1,154 @@
+package io.mflo.rxjava_sql;
+
+import java.math.BigDecimal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model a set of <code>DataSource</code>s over which tables are sharded
+ *
+ * <p>Rows are assigned to a shard by the value of a shard key parameter. When
+ * an <code>SQL</code> is constructed from Shards, every <code>Update</code> and
+ * every <code>Query</code> that binds the shard key is routed to one shard.
+ * A <code>Query</code> that does not bind the shard key is sent to all shards
+ * in parallel and the results are merged according to its <code>OrderBy</code>
+ * clauses. A <code>Batch</code> is sent to all shards.</p>
+ *
+ * <p>Each shard may itself be a {@link Replicas}.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Shards {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Shards.class);
+
+  // private state
+  private final List<DataSource> shards = new ArrayList<>();
+
+  // state accumulated by fluent API
+  private ToIntFunction<Object> hash = Shards::hashOf;
+  private String key;
+  private int position = 0;
+
+  /**
+   * Construct <code>Shards</code> from one or more data sources
+   *
+   * @param   shards <code>DataSource</code> for each shard, in shard order
+   */
+  public Shards(DataSource... shards) {
+    Collections.addAll(this.shards, shards);
+  }
+
+  /**
+   * Fluent API to configure the function that maps a shard key value to
+   * a shard. The result is reduced modulo the number of shards. If
+   * <code>hash</code> is not called, numeric keys hash by their long value
+   * and all other keys by <code>hashCode</code>.
+   *
+   * @param   hash function of shard key value
+   *
+   * @return  this Shards
+   */
+  public Shards hash(ToIntFunction<Object> hash) {
+    this.hash = hash;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the name of the shard key parameter, as used
+   * with named parameters.
+   *
+   * @param   key parameter name
+   *
+   * @return  this Shards
+   */
+  public Shards key(String key) {
+    this.key = key;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the position (relative to 1) of the shard key
+   * parameter, as used with positional parameters.
+   *
+   * @param   position parameter position
+   *
+   * @return  this Shards
+   */
+  public Shards key(int position) {
+    this.position = position;
+    return this;
+  }
+
+  /**
+   * Access the data source of each shard
+   *
+   * @return  shards, in shard order
+   */
+  public List<DataSource> getShards() {
+    return Collections.unmodifiableList(shards);
+  }
+
+  /**
+   * Find the shard that owns a shard key value
+   *
+   * @param   value of shard key
+   *
+   * @return  shard index
+   */
+  public int shardOf(Object value) {
+    return Math.floorMod(hash.applyAsInt(value), shards.size());
+  }
+
+  /**
+   * Find the shard addressed by a set of parameters
+   *
+   * @param   parameters as accumulated by the fluent API
+   *
+   * @return  data source of shard, or null if the shard key is not bound
+   */
+  DataSource route(Map<String,Object> parameters) {
+    Object value = null;
+    Object[] params = (Object[])parameters.get(Parameters.POSITIONAL);
+    if (params != null) {
+      if ((position > 0) && (position <= params.length))
+        value = params[position - 1];
+    }
+    else if (key != null)
+      value = parameters.get(key);
+    return (value != null)? shards.get(shardOf(value)) : null;
+  }
+
+  /*
+   * Default shard key hash, so that equal numeric values of different
+   * types land on the same shard
+   *
+   * @param   value of shard key
+   *
+   * @return  hash
+   */
+  private static int hashOf(Object value) {
+    if ((value instanceof Long) || (value instanceof Integer)
+     || (value instanceof Short) || (value instanceof Byte))
+      return Long.hashCode(((Number)value).longValue());
+    if (value instanceof BigDecimal) {
+      BigDecimal decimal = (BigDecimal)value;
+      if (decimal.signum() == 0 || decimal.stripTrailingZeros().scale() <= 0)
+        return Long.hashCode(decimal.longValue());
+    }
+    return value.hashCode();
+  }
+
+}
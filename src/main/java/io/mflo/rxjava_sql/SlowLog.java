@@ -0,0 +1,355 @@
+package io.mflo.rxjava_sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+/**
+ * Detect slow SQL statements and capture their plans
+ *
+ * <p>A SlowLog is installed by <code>SQL.slowLog</code>. Whenever a
+ * <code>Query</code> window or an <code>Update</code> takes longer than the
+ * threshold, an {@link Entry} with the prepared SQL, its parameters, the row
+ * count and the timing is published to the {@link Sink}. A sample of slow
+ * statements, limited to a maximum rate, is first run through
+ * <code>EXPLAIN</code> on a separate connection in the background, so the
+ * entry also carries the plan.</p>
+ *
+ * <p>Parameters can be redacted by name; positional parameters are named by
+ * their position, relative to 1.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class SlowLog {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(SlowLog.class);
+
+  // replaces redacted parameter values
+  private static final String REDACTED = "<redacted>";
+
+  // private state
+  private final Sink sink;
+  private long windowStart = 0;
+  private int explained = 0;
+
+  // state accumulated by fluent API
+  private int explainsPerMinute = 10;
+  private Set<String> redacted = Collections.emptySet();
+  private double sample = 1.0;
+  private long thresholdMillis = 1000;
+
+  /**
+   * Construct a <code>SlowLog</code> that publishes to a sink
+   *
+   * @param   sink for slow statement entries
+   */
+  public SlowLog(Sink sink) {
+    this.sink = sink;
+  }
+
+  /**
+   * Fluent API to configure the maximum number of statements explained per
+   * minute. If <code>explains</code> is not called, at most 10 are explained.
+   *
+   * @param   explainsPerMinute maximum; zero means never explain
+   *
+   * @return  this SlowLog
+   */
+  public SlowLog explains(int explainsPerMinute) {
+    this.explainsPerMinute = explainsPerMinute;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure parameters whose values are never published
+   *
+   * @param   names of parameters, or positions for positional parameters
+   *
+   * @return  this SlowLog
+   */
+  public SlowLog redact(String... names) {
+    this.redacted = new HashSet<>(Arrays.asList(names));
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the fraction of slow statements that are
+   * explained. If <code>sample</code> is not called, all are eligible.
+   *
+   * @param   sample between 0 and 1
+   *
+   * @return  this SlowLog
+   */
+  public SlowLog sample(double sample) {
+    this.sample = sample;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the latency above which a statement is slow. If
+   * <code>threshold</code> is not called, the threshold is one second.
+   *
+   * @param   thresholdMillis milliseconds
+   *
+   * @return  this SlowLog
+   */
+  public SlowLog threshold(long thresholdMillis) {
+    this.thresholdMillis = thresholdMillis;
+    return this;
+  }
+
+  /**
+   * Record the execution of a statement, publishing it if it is slow
+   *
+   * @param   ds data source the statement ran against
+   * @param   dialect of the data source, or null to choose from its metadata
+   * @param   prepared SQL, as prepared
+   * @param   binder binds the parameters to a statement
+   * @param   parameters as accumulated by the fluent API
+   * @param   rows count of rows retrieved or affected
+   * @param   nanos time taken
+   */
+  void record(DataSource ds,
+              Dialect dialect,
+              String prepared,
+              Binder binder,
+              Map<String,Object> parameters,
+              int rows,
+              long nanos) {
+    long millis = nanos / 1000000;
+    if (millis < thresholdMillis)
+      return;
+    Entry entry = new Entry(prepared, redact(parameters), rows, millis);
+    if (!admit()) {
+      publish(entry);
+      return;
+    }
+    Observable.<List<Result>>create((subscriber) -> {
+        try {
+          subscriber.onNext(explain(ds, dialect, prepared, binder));
+          subscriber.onCompleted();
+        }
+        catch (SQLException | RuntimeException e) {
+          subscriber.onError(e);
+        }
+      })
+      .subscribeOn(Schedulers.io())
+      .subscribe((plan) -> entry.plan = plan,
+                 (e) -> {
+                   log.warn("Failed to explain slow statement: " + e.getMessage());
+                   publish(entry);
+                 },
+                 () -> publish(entry));
+  }
+
+  /*
+   * Decide whether to explain a slow statement, by sample and by rate
+   *
+   * @return  true or false as appropriate
+   */
+  private synchronized boolean admit() {
+    if (ThreadLocalRandom.current().nextDouble() >= sample)
+      return false;
+    long now = System.currentTimeMillis();
+    if (now - windowStart >= 60000) {
+      windowStart = now;
+      explained = 0;
+    }
+    if (explained >= explainsPerMinute)
+      return false;
+    explained++;
+    return true;
+  }
+
+  /*
+   * Run EXPLAIN on a statement using a separate connection, in the syntax
+   * of its database
+   *
+   * @param   ds data source
+   * @param   dialect or null to choose from the metadata of the connection
+   * @param   prepared SQL
+   * @param   binder
+   *
+   * @return  plan, one Result per row, or null if the database can't explain
+   *
+   * @throws  SQLException
+   */
+  private static List<Result> explain(DataSource ds,
+                                      Dialect dialect,
+                                      String prepared,
+                                      Binder binder) throws SQLException {
+    List<Result> plan = new ArrayList<>();
+    try (Connection connection = ds.getConnection()) {
+      String explain = Dialect.of(dialect, connection).explain(prepared);
+      if (explain == null)
+        return null;
+      try (PreparedStatement stmt = connection.prepareStatement(explain)) {
+        binder.bind(stmt);
+        try (ResultSet rs = stmt.executeQuery()) {
+          ResultSetMetaData rsMetaData = rs.getMetaData();
+          while (rs.next()) {
+            LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+            for (int i = 1; i <= rsMetaData.getColumnCount(); i++)
+              attributes.put(rsMetaData.getColumnLabel(i), rs.getObject(i));
+            plan.add(new Result(attributes));
+          }
+        }
+      }
+    }
+    return plan;
+  }
+
+  /*
+   * Publish an entry, protecting the caller from a failing sink
+   *
+   * @param   entry
+   */
+  private void publish(Entry entry) {
+    try {
+      sink.accept(entry);
+    }
+    catch (RuntimeException e) {
+      log.warn("Slow log sink failed: " + e.getMessage());
+    }
+  }
+
+  /*
+   * Copy parameters for publication, redacting as configured
+   *
+   * @param   parameters as accumulated by the fluent API
+   *
+   * @return  parameters by name, or by position for positional parameters
+   */
+  private Map<String,Object> redact(Map<String,Object> parameters) {
+    Map<String,Object> copy = new LinkedHashMap<>();
+    Object[] params = (Object[])parameters.get(Parameters.POSITIONAL);
+    if (params != null) {
+      for (int i = 0; i < params.length; i++)
+        copy.put(String.valueOf(i + 1), params[i]);
+    }
+    else copy.putAll(parameters);
+    for (String name : copy.keySet())
+      if (redacted.contains(name))
+        copy.put(name, REDACTED);
+    return copy;
+  }
+
+  /**
+   * Pluggable destination for slow statement entries
+   */
+
+  public interface Sink {
+    void accept(Entry entry);
+  }
+
+  /**
+   * One slow statement
+   */
+
+  public static final class Entry {
+
+    // private state
+    private final String sql;
+    private final Map<String,Object> parameters;
+    private final int rows;
+    private final long millis;
+    private volatile List<Result> plan;
+
+    /**
+     * Construct one <code>Entry</code>
+     *
+     * @param   sql as prepared
+     * @param   parameters redacted
+     * @param   rows count
+     * @param   millis time taken
+     */
+    private Entry(String sql,
+                  Map<String,Object> parameters,
+                  int rows,
+                  long millis) {
+      this.sql = sql;
+      this.parameters = Collections.unmodifiableMap(parameters);
+      this.rows = rows;
+      this.millis = millis;
+    }
+
+    /**
+     * Access the time taken
+     *
+     * @return  milliseconds
+     */
+    public long getMillis() {
+      return millis;
+    }
+
+    /**
+     * Access the parameters, redacted as configured
+     *
+     * @return  parameter values by name, or by position
+     */
+    public Map<String,Object> getParameters() {
+      return parameters;
+    }
+
+    /**
+     * Access the plan
+     *
+     * @return  plan, one Result per row of EXPLAIN output, or null if not explained
+     */
+    public List<Result> getPlan() {
+      return plan;
+    }
+
+    /**
+     * Access the count of rows retrieved or affected
+     *
+     * @return  count
+     */
+    public int getRows() {
+      return rows;
+    }
+
+    /**
+     * Access the SQL, as prepared
+     *
+     * @return  SQL
+     */
+    public String getSQL() {
+      return sql;
+    }
+
+    /**
+     * Convert this <code>Entry</code> to a string for logging purposes
+     *
+     * @return  stringified representation of <code>Entry</code>
+     */
+    @Override public String toString() {
+      return millis + "ms " + rows + " rows [" + sql + "] " + parameters + ((plan != null)? " " + plan : "");
+    }
+
+  }
+
+}
@@ -0,0 +1,185 @@
+package io.mflo.rxjava_sql;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+/**
+ * Model a replayable buffer of Results that spills to disk
+ *
+ * <p>A Spool subscribes to its source once, the first time it is replayed.
+ * Up to <code>threshold</code> Results are held in the heap; the rest are
+ * encoded in a compact binary row format into a temporary file, which is
+ * memory-mapped for reading. Rows are decoded lazily as they are replayed.</p>
+ *
+ * <p>All the Results of the source are expected to share the same columns,
+ * as Query results do. A Spool must be closed to release its file.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class Spool implements AutoCloseable {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(Spool.class);
+
+  // number of Results queued while filling
+  private static final int CAPACITY = 256;
+
+  // private state
+  private final Observable<Result> source;
+  private final List<Result> heap = new ArrayList<>();
+  private RowFile file = null;
+  private boolean closed = false;
+  private boolean filled = false;
+  private int size = 0;
+
+  // state accumulated by fluent API
+  private File directory = null;
+  private int threshold = 10000;
+
+  /**
+   * Construct a <code>Spool</code> of Results
+   *
+   * @param   source Observable results
+   */
+  public Spool(Observable<Result> source) {
+    this.source = source;
+  }
+
+  /**
+   * Release the file backing this <code>Spool</code>
+   */
+  @Override public synchronized void close() {
+    closed = true;
+    release();
+  }
+
+  /**
+   * Fluent API to configure the directory for the temporary file. If
+   * <code>directory</code> is not called, the system default is used.
+   *
+   * @param   directory for temporary file
+   *
+   * @return  this Spool
+   */
+  public Spool directory(File directory) {
+    this.directory = directory;
+    return this;
+  }
+
+  /**
+   * Replay the Results of this <code>Spool</code>. The first replay retrieves
+   * all the Results from the source. If it fails, whatever was retrieved is
+   * discarded, so the next replay retrieves from the source again. Replaying
+   * a closed Spool fails with <code>IllegalStateException</code>.
+   *
+   * @return  Observable results
+   */
+  public Observable<Result> replay() {
+    return Observable.create((subscriber) -> {
+      try {
+        fill();
+        for (int i = 0; (i < heap.size()) && !subscriber.isUnsubscribed(); i++)
+          subscriber.onNext(heap.get(i));
+        if ((file != null) && !subscriber.isUnsubscribed()) {
+          file.read((result) -> {
+              subscriber.onNext(result);
+              return !subscriber.isUnsubscribed();
+            });
+        }
+        subscriber.onCompleted();
+      }
+      catch (Pipe.Failure e) {
+        subscriber.onError(e.getCause());
+      }
+      catch (IOException | ClassNotFoundException | IllegalStateException e) {
+        subscriber.onError(e);
+      }
+    });
+  }
+
+  /**
+   * Count the Results in this <code>Spool</code>. The count is zero until
+   * the first replay.
+   *
+   * @return  number of Results
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Fluent API to configure the number of Results held in the heap before
+   * the rest are spilled to disk.
+   *
+   * @param   threshold number of Results
+   *
+   * @return  this Spool
+   */
+  public Spool threshold(int threshold) {
+    this.threshold = threshold;
+    return this;
+  }
+
+  /*
+   * Retrieve all the Results from the source, once
+   *
+   * @throws  IOException
+   */
+  private synchronized void fill() throws IOException {
+    if (closed)
+      throw new IllegalStateException("Spool is closed");
+    if (filled)
+      return;
+    try (Pipe<Result> pipe = new Pipe<>(source, CAPACITY)) {
+      while (pipe.hasNext() && heap.size() < threshold)
+        heap.add(pipe.next());
+      size = heap.size();
+      if (pipe.hasNext())
+        spill(pipe);
+    }
+    catch (IOException | RuntimeException e) {
+      release();
+      throw e;
+    }
+    filled = true;
+  }
+
+  /*
+   * Discard the Results retrieved so far and delete the file
+   */
+  private void release() {
+    heap.clear();
+    size = 0;
+    if (file != null)
+      file.close();
+    file = null;
+  }
+
+  /*
+   * Spill the remaining Results from the source to a temporary file
+   *
+   * @param   pipe positioned at the first Result to spill
+   *
+   * @throws  IOException
+   */
+  private void spill(Pipe<Result> pipe) throws IOException {
+    file = new RowFile("rxjava-sql-spool", directory);
+    log.debug("Spool exceeded threshold of " + threshold + " Results; spilling to " + file.getFile());
+    while (pipe.hasNext()) {
+      file.write(pipe.next());
+      size++;
+    }
+    file.finish();
+  }
+
+}
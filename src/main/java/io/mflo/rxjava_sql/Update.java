@@ -12,12 +12,21 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import rx.Observable;
+
 /**
  * Model SQL DELETE/INSERT/UPDATE
  *
  * <p>An Uopdate is created by the <code>SQL.update</code> method.
  * A fluent API configures the Update until it is ready to {@link #execute}.</p>
  *
+ * <p>When the <code>SQL</code> is configured for write-behind, an Update can
+ * instead be {@link #enqueue enqueued}, to be coalesced with others into a
+ * JDBC batch.</p>
+ *
+ * <p>When the <code>SQL</code> is sharded, an Update must bind the shard key
+ * and is sent to the primary of the shard that owns it.</p>
+ *
  * @author      http://mflo.io
  * @version     0.0.1
  */
@@ -29,10 +38,16 @@ public final class Update implements Parameters {
   // private state
   private final String sql;
   private final DataSource ds;
+  private final Shards shards;
 
   // state accumulated by fluent API
   // NOTE: execute should never modify these fields, so a Update can be reused
+  private Map<String,Bulkhead> bulkheads = null;
+  private String category = Bulkhead.DEFAULT;
+  private Dialect dialect = null;
   private Map<String,Object> parameters = new HashMap();
+  private SlowLog slowLog = null;
+  private WriteBehind writeBehind = null;
 
   /**
    * Private ctor: use <code>SQL.update</code>
@@ -44,8 +59,73 @@ public final class Update implements Parameters {
    */
   protected Update(String sql,
                    DataSource ds) {
+    this(sql, ds, null);
+  }
+
+  /**
+   * Private ctor: use <code>SQL.update</code>
+   *
+   * @param   sql SQL DELETE/INSERT/UPDATE statement
+   * @param   ds data source, or null when sharded
+   * @param   shards data sources when sharded, or null
+   *
+   * @see     SQL#update to construct from a string representation
+   */
+  protected Update(String sql,
+                   DataSource ds,
+                   Shards shards) {
     this.sql = sql;
     this.ds = ds;
+    this.shards = shards;
+  }
+
+  /**
+   * Fluent API to configure Update with the category of work it belongs to,
+   * for admission control. If <code>category</code> is not called, the
+   * Update belongs to <code>Bulkhead.DEFAULT</code>.
+   *
+   * @param   category name
+   *
+   * @return  this Update
+   *
+   * @see     SQL#bulkhead
+   */
+  public Update category(String category) {
+    this.category = category;
+    return this;
+  }
+
+  /**
+   * Enqueue this <code>Update</code> for write-behind. The Update is executed
+   * in a batch with others that have the same SQL, and the Observable emits
+   * the count of rows it affected. If the <code>SQL</code> is not configured
+   * for write-behind, the Update is executed when the Observable is
+   * subscribed, like any other Observable of this library.
+   *
+   * @return  Observable count number of rows affected
+   *
+   * @see     SQL#writeBehind
+   */
+  public Observable<Integer> enqueue() {
+    if (writeBehind == null) {
+      return Observable.defer(() -> {
+          try {
+            return Observable.just(execute());
+          }
+          catch (SQLException e) {
+            return Observable.error(e);
+          }
+        });
+    }
+    try {
+      Map<String,Object> parameters = this.parameters;
+      Map<String,Integer> ordinalByName = new HashMap<>();
+      String prepared = orderParameterNames(sql, ordinalByName);
+      return writeBehind.enqueue(target(), bulkhead(), prepared, (stmt) -> injectParameters(stmt, parameters, ordinalByName));
+    }
+    catch (SQLException e) {
+      return Observable.error(e);
+    }
   }
 
   /**
@@ -53,22 +133,43 @@ public final class Update implements Parameters {
    *
    * @return  count number of rows affected
    *
-   * @throws  SQLException when any SQL statement fails
+   * @throws  SQLException when any SQL statement fails, or the shard key is not bound
    */
   public int execute() throws SQLException {
     int count = 0;
-    try (Connection connection = ds.getConnection()) {
+    DataSource target = target();
+    try (Connection connection = connect(target)) {
       Map<String,Integer> ordinalByName = new HashMap<>();
       String prepared = orderParameterNames(sql, ordinalByName);
       try (PreparedStatement stmt = connection.prepareStatement(prepared)) {
         injectParameters(stmt, parameters, ordinalByName);
         log.debug(stmt.toString());
+        long start = System.nanoTime();
         count = stmt.executeUpdate();
+        if (slowLog != null)
+          slowLog.record(target, dialect, prepared, (explain) -> injectParameters(explain, parameters, ordinalByName),
+                         parameters, count, System.nanoTime() - start);
       }
     }
     return count;
   }
 
+  /**
+   * Resolve the data source this <code>Update</code> writes to
+   *
+   * @return  data source
+   *
+   * @throws  SQLException when sharded and the shard key is not bound
+   */
+  DataSource target() throws SQLException {
+    if (shards == null)
+      return ds;
+    DataSource shard = shards.route(parameters);
+    if (shard == null)
+      throw new SQLException("Shard key not bound for update [" + sql + "]");
+    return Replicas.writer(shard);
+  }
+
   /**
    * Fluent API to configure Query with positional parameter values. Positional
    * parameters are represented by ? placeholders in the SQL.
@@ -118,4 +219,83 @@ public final class Update implements Parameters {
     return this;
   }
 
-}
+  /**
+   * Fluent API to configure Update with the bulkheads of its <code>SQL</code>
+   *
+   * @param   bulkheads by category, or null for none
+   *
+   * @return  this Update
+   *
+   * @see     SQL#bulkhead
+   */
+  Update bulkheads(Map<String,Bulkhead> bulkheads) {
+    this.bulkheads = bulkheads;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure Update with the dialect of its <code>SQL</code>
+   *
+   * @param   dialect or null to choose from the metadata of the connection
+   *
+   * @return  this Update
+   *
+   * @see     SQL#dialect
+   */
+  Update dialect(Dialect dialect) {
+    this.dialect = dialect;
+    return this;
+  }
+
+  /*
+   * Get a connection, subject to admission control by category
+   *
+   * @param   ds data source
+   *
+   * @return  connection
+   *
+   * @throws  SQLException when the connection can't be got, or admission is refused
+   */
+  private Connection connect(DataSource ds) throws SQLException {
+    Bulkhead bulkhead = bulkhead();
+    return (bulkhead != null)? bulkhead.getConnection(ds, 0) : ds.getConnection();
+  }
+
+  /*
+   * Find the bulkhead of this Update's category
+   *
+   * @return  bulkhead, or null for none
+   */
+  private Bulkhead bulkhead() {
+    return (bulkheads != null)? bulkheads.get(category) : null;
+  }
+
+  /**
+   * Fluent API to configure Update to report when slow
+   *
+   * @param   slowLog or null for none
+   *
+   * @return  this Update
+   *
+   * @see     SQL#slowLog
+   */
+  Update slowLog(SlowLog slowLog) {
+    this.slowLog = slowLog;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure Update to coalesce when enqueued
+   *
+   * @param   writeBehind buffer, or null for none
+   *
+   * @return  this Update
+   *
+   * @see     SQL#writeBehind
+   */
+  Update writeBehind(WriteBehind writeBehind) {
+    this.writeBehind = writeBehind;
+    return this;
+  }
+
+}
\ No newline at end of file
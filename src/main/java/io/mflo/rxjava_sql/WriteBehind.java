@@ -0,0 +1,339 @@
+package io.mflo.rxjava_sql;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Coalesce high-frequency Updates into JDBC batches
+ *
+ * <p>A WriteBehind is installed by <code>SQL.writeBehind</code>. Thereafter,
+ * <code>Update.enqueue</code> buffers the Update instead of executing it.
+ * Updates with the same SQL to the same data source are grouped and sent as
+ * one JDBC batch on one connection, when the group reaches the batch size or
+ * when its oldest Update has waited the maximum delay, whichever is first.
+ * The connection is taken through the bulkhead of the Updates' category, so
+ * Updates in different categories are grouped apart. Each caller's Observable
+ * emits the count of rows its own Update affected once the batch has
+ * executed, or 1 if the driver reports success without a count.</p>
+ *
+ * <p>The buffer holds at most <code>capacity</code> Updates across all groups.
+ * When it is full, <code>enqueue</code> either blocks until a batch has been
+ * flushed, or fails with an <code>SQLException</code>, as configured. Call
+ * {@link #flush} at shutdown to execute everything still buffered.</p>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public final class WriteBehind {
+
+  // logger for this class
+  private static final Logger log = LoggerFactory.getLogger(WriteBehind.class);
+
+  // private state; buffers are grouped by the identity of their DataSource,
+  // then by their bulkhead and SQL
+  private final Map<DataSource,Map<List<Object>,Buffer>> buffers = new IdentityHashMap<>();
+  private int pending = 0;
+  private long batches = 0;
+  private long rejected = 0;
+
+  // state accumulated by fluent API
+  private int batchSize = 100;
+  private boolean block = true;
+  private int capacity = 10000;
+  private long maxDelayMillis = 10;
+
+  /**
+   * Fluent API to configure the number of Updates per batch. If
+   * <code>batchSize</code> is not called, batches hold up to 100 Updates.
+   *
+   * @param   batchSize maximum Updates per batch
+   *
+   * @return  this WriteBehind
+   */
+  public WriteBehind batchSize(int batchSize) {
+    this.batchSize = Math.max(1, batchSize);
+    return this;
+  }
+
+  /**
+   * Fluent API to configure what happens when the buffer is full. If
+   * <code>block</code> is not called, callers block until there is room.
+   *
+   * @param   block true to block callers, false to fail their Updates
+   *
+   * @return  this WriteBehind
+   */
+  public WriteBehind block(boolean block) {
+    this.block = block;
+    return this;
+  }
+
+  /**
+   * Fluent API to configure the maximum number of buffered Updates. If
+   * <code>capacity</code> is not called, up to 10000 Updates are buffered.
+   *
+   * @param   capacity maximum Updates
+   *
+   * @return  this WriteBehind
+   */
+  public WriteBehind capacity(int capacity) {
+    this.capacity = Math.max(1, capacity);
+    return this;
+  }
+
+  /**
+   * Execute every buffered Update now, on the calling thread
+   *
+   * @throws  SQLException when any batch fails; the failures of every batch
+   *          are chained by <code>getNextException</code>
+   */
+  public void flush() throws SQLException {
+    List<Buffer> all = new ArrayList<>();
+    synchronized (this) {
+      for (Map<List<Object>,Buffer> byPrepared : buffers.values())
+        all.addAll(byPrepared.values());
+    }
+    SQLException failure = null;
+    for (Buffer buffer : all) {
+      try {
+        flush(buffer);
+      }
+      catch (SQLException e) {
+        if (failure == null)
+          failure = e;
+        else failure.setNextException(e);
+      }
+    }
+    if (failure != null)
+      throw failure;
+  }
+
+  /**
+   * Access the number of batches executed
+   *
+   * @return  count
+   */
+  public synchronized long getBatches() {
+    return batches;
+  }
+
+  /**
+   * Access the number of Updates buffered and not yet executed
+   *
+   * @return  count
+   */
+  public synchronized int getPending() {
+    return pending;
+  }
+
+  /**
+   * Access the number of Updates rejected because the buffer was full
+   *
+   * @return  count
+   */
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  /**
+   * Fluent API to configure the longest an Update waits for its batch to fill.
+   * If <code>maxDelay</code> is not called, Updates wait at most 10ms.
+   *
+   * @param   maxDelay maximum wait
+   * @param   unit of maxDelay
+   *
+   * @return  this WriteBehind
+   */
+  public WriteBehind maxDelay(long maxDelay,
+                              TimeUnit unit) {
+    this.maxDelayMillis = unit.toMillis(maxDelay);
+    return this;
+  }
+
+  /**
+   * Buffer one Update
+   *
+   * @param   ds data source the Update writes to
+   * @param   bulkhead admits the batch's connection, or null for none
+   * @param   prepared SQL, as prepared
+   * @param   binder binds the Update's parameters to a statement
+   *
+   * @return  Observable count of rows affected, emitted once its batch has executed
+   */
+  Observable<Integer> enqueue(DataSource ds,
+                              Bulkhead bulkhead,
+                              String prepared,
+                              Binder binder) {
+    AsyncSubject<Integer> subject = AsyncSubject.create();
+    synchronized (this) {
+      while (pending >= capacity) {
+        if (!block) {
+          rejected++;
+          return Observable.error(new SQLException("Write-behind buffer full for update [" + prepared + "]"));
+        }
+        try {
+          wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return Observable.error(new SQLException("Interrupted while waiting for write-behind buffer", e));
+        }
+      }
+      Buffer buffer = buffers.computeIfAbsent(ds, (k) -> new HashMap<>())
+                             .computeIfAbsent(Arrays.asList(bulkhead, prepared), (k) -> new Buffer(ds, bulkhead, prepared));
+      buffer.entries.add(new Entry(binder, subject));
+      pending++;
+      if (buffer.entries.size() >= batchSize)
+        schedule(buffer, 0);
+      else if (buffer.entries.size() == 1)
+        schedule(buffer, maxDelayMillis);
+    }
+    return subject;
+  }
+
+  /*
+   * Execute the Updates buffered in a group as one batch
+   *
+   * @param   buffer group of Updates
+   *
+   * @throws  SQLException when the batch fails
+   */
+  private void flush(Buffer buffer) throws SQLException {
+    List<Entry> entries;
+    synchronized (this) {
+      entries = buffer.entries;
+      if (entries.isEmpty())
+        return;
+      buffer.entries = new ArrayList<>();
+      pending -= entries.size();
+      batches++;
+      notifyAll();
+    }
+    int[] counts = new int[0];
+    SQLException failure = null;
+    try (Connection connection = (buffer.bulkhead != null)? buffer.bulkhead.getConnection(buffer.ds, 0) : buffer.ds.getConnection();
+         PreparedStatement stmt = connection.prepareStatement(buffer.prepared)) {
+      for (Entry entry : entries) {
+        entry.binder.bind(stmt);
+        stmt.addBatch();
+      }
+      log.debug("Executing batch of " + entries.size() + " [" + buffer.prepared + "]");
+      counts = stmt.executeBatch();
+    }
+    catch (BatchUpdateException e) {
+      counts = (e.getUpdateCounts() != null)? e.getUpdateCounts() : counts;
+      failure = e;
+    }
+    catch (SQLException e) {
+      failure = e;
+    }
+    for (int i = 0; i < entries.size(); i++) {
+      AsyncSubject<Integer> subject = entries.get(i).subject;
+      if ((i < counts.length) && (counts[i] != Statement.EXECUTE_FAILED)) {
+        subject.onNext((counts[i] == Statement.SUCCESS_NO_INFO)? 1 : counts[i]);
+        subject.onCompleted();
+      }
+      else subject.onError((failure != null)? failure : new SQLException("Update failed in batch [" + buffer.prepared + "]"));
+    }
+    if (failure != null)
+      throw failure;
+  }
+
+  /*
+   * Schedule a group of Updates to be flushed in the background
+   *
+   * @param   buffer group of Updates
+   * @param   delayMillis delay before flushing
+   */
+  private void schedule(Buffer buffer,
+                        long delayMillis) {
+    Scheduler.Worker worker = Schedulers.io().createWorker();
+    worker.schedule(() -> {
+        try {
+          flush(buffer);
+        }
+        catch (SQLException e) {
+          log.warn("Write-behind batch failed: " + e.getMessage());
+        }
+        finally {
+          worker.unsubscribe();
+        }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Updates with the same SQL to the same data source, in the same category
+   */
+
+  private static final class Buffer {
+
+    // private state
+    private final DataSource ds;
+    private final Bulkhead bulkhead;
+    private final String prepared;
+    private List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Construct one <code>Buffer</code>
+     *
+     * @param   ds data source
+     * @param   bulkhead or null
+     * @param   prepared SQL
+     */
+    private Buffer(DataSource ds,
+                   Bulkhead bulkhead,
+                   String prepared) {
+      this.ds = ds;
+      this.bulkhead = bulkhead;
+      this.prepared = prepared;
+    }
+
+  }
+
+  /**
+   * One buffered Update
+   */
+
+  private static final class Entry {
+
+    // private state
+    private final Binder binder;
+    private final AsyncSubject<Integer> subject;
+
+    /**
+     * Construct one <code>Entry</code>
+     *
+     * @param   binder binds the Update's parameters
+     * @param   subject completed when the Update has executed
+     */
+    private Entry(Binder binder,
+                  AsyncSubject<Integer> subject) {
+      this.binder = binder;
+      this.subject = subject;
+    }
+
+  }
+
+}
@@ -0,0 +1,131 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Adaptive</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class AdaptiveTest {
+
+  private static final Logger log = LoggerFactory.getLogger(AdaptiveTest.class);
+
+  private static final long MS = 1000000;
+
+  private static final Pattern LIMIT = Pattern.compile("LIMIT (\\d+),(\\d+)");
+
+  /*
+   * Answer each window from a table of rows holding one string of 500
+   * characters, in a column whose declared display size is 1
+   */
+  private DataSource table(int rows) {
+    char[] chars = new char[500];
+    Arrays.fill(chars, 'x');
+    String value = new String(chars);
+    ResultSetMetaData rsMetaData = (ResultSetMetaData)Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+      new Class[] { ResultSetMetaData.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getColumnCount":
+            case "getColumnDisplaySize":
+              return 1;
+            case "getColumnLabel":
+            case "getColumnName":
+              return "name";
+            case "getColumnType":
+              return Types.VARCHAR;
+            default:
+              return null;
+          }
+        });
+    return (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> {
+          if (!method.getName().equals("getConnection"))
+            return null;
+          return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class[] { Connection.class },
+            (connection, cmethod, cargs) -> {
+                if (!cmethod.getName().equals("prepareStatement"))
+                  return null;
+                Matcher m = LIMIT.matcher((String)cargs[0]);
+                assertTrue("Query should paginate", m.find());
+                int[] window = new int[] { Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)) };
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                  new Class[] { PreparedStatement.class },
+                  (stmt, smethod, sargs) -> {
+                      if (!smethod.getName().equals("executeQuery"))
+                        return null;
+                      int[] remaining = new int[] { Math.max(0, Math.min(window[1], rows - window[0])) };
+                      return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                        new Class[] { ResultSet.class },
+                        (rs, rmethod, rargs) -> {
+                            switch (rmethod.getName()) {
+                              case "next":
+                                return remaining[0]-- > 0;
+                              case "getMetaData":
+                                return rsMetaData;
+                              case "getObject":
+                                return value;
+                              default:
+                                return null;
+                            }
+                          });
+                    });
+              });
+        });
+  }
+
+  @Test public void testGrow() {
+    Adaptive adaptive = new Adaptive(10, 1000).target(100);
+    int size = adaptive.first(10);
+    size = adaptive.next(size, size, 5 * MS, 5 * MS, 100);
+    assertEquals("Fast windows should grow, at most doubling", 20, size);
+  }
+
+  @Test public void testShrink() {
+    Adaptive adaptive = new Adaptive(10, 1000).target(100);
+    int size = adaptive.next(1000, 1000, 300 * MS, 100 * MS, 100);
+    assertEquals("Slow windows should shrink halfway to ideal", 625, size);
+  }
+
+  @Test public void testBounds() {
+    Adaptive adaptive = new Adaptive(10, 1000).target(100).maxBytes(100 * 1000);
+    assertEquals("First window should be clamped", 1000, adaptive.first(5000));
+    int size = adaptive.next(1000, 1000, MS, MS, 1000);
+    assertEquals("Windows should be capped by bytes", 550, size);
+    assertEquals("Metrics should record windows", 1, adaptive.getWindows());
+    assertEquals("Metrics should record sizes", 1000, adaptive.getLastSize());
+  }
+
+  @Test public void testMeasured() {
+    Adaptive adaptive = new Adaptive(10, 1000).target(100000).maxBytes(20 * 1000);
+    int count = new Query("SELECT name FROM beer", table(160)).dialect(Dialect.MYSQL).limit(0, 100)
+      .allRows(true).adaptive(adaptive).execute().count().toBlocking().single();
+    assertEquals("All rows should be retrieved", 160, count);
+    assertEquals("First window should be as configured", 100, adaptive.getLargestSize());
+    assertEquals("Windows should be capped by the bytes of the rows read", 40, adaptive.getLastSize());
+  }
+
+}
@@ -0,0 +1,158 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Batch</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class BatchTest {
+
+  private static final Logger log = LoggerFactory.getLogger(BatchTest.class);
+
+  @Test public void testTableOf() {
+    assertEquals("Inserts should be attributed", "person", Batch.tableOf("insert into person values('Mark', 'Florence', 'Mr')"));
+    assertEquals("DDL should be attributed", "title", Batch.tableOf("create table title(title varchar(255)) ENGINE=MyISAM"));
+    assertEquals("Quoted names should be normalized", "person", Batch.tableOf("DROP TABLE IF EXISTS `Person`"));
+    assertEquals("Literals should be ignored", "title", Batch.tableOf("insert into title values('Select', 'I like beer')"));
+    assertNull("Reads from other tables should be barriers", Batch.tableOf("insert into person select * from staff"));
+    assertNull("Multi-table statements should be barriers", Batch.tableOf("drop table person, title"));
+    assertNull("Unknown statements should be barriers", Batch.tableOf("set foreign_key_checks = 0"));
+    assertEquals("Qualified names should be unqualified", "person", Batch.tableOf("delete from `test`.`Person` where id = 1"));
+    assertEquals("Quoted names may contain spaces", "beer list", Batch.tableOf("insert into `beer list` values(1)"));
+  }
+
+  @Test public void testSerial() {
+    assertTrue("SET should be serial", Batch.isSerial("SET foreign_key_checks = 0"));
+    assertTrue("USE should be serial", Batch.isSerial("use test"));
+    assertTrue("Temporary tables should be serial", Batch.isSerial("create temporary table staged(id int)"));
+    assertTrue("Unparseable table names should be serial", Batch.isSerial("insert into `beer values(1)"));
+    assertFalse("Table statements should not be serial", Batch.isSerial("update person set title = 'Mr'"));
+    List<List<List<Integer>>> stages = Batch.plan(Arrays.asList("insert into person values('Mark')",
+                                                                 "set @title = 'Mr'",
+                                                                 "insert into title values(@title)"));
+    assertEquals("Session statements should make the batch one lane",
+                 Arrays.asList(Arrays.asList(Arrays.asList(0, 1, 2))), stages);
+  }
+
+  @Test public void testSession() throws Exception {
+    AtomicInteger opened = new AtomicInteger();
+    DataSource ds = (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> {
+          opened.incrementAndGet();
+          Set<String> session = new HashSet<>();
+          return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class[] { Connection.class },
+            (connection, cmethod, cargs) -> {
+                if (!cmethod.getName().equals("prepareStatement"))
+                  return null;
+                String sql = (String)cargs[0];
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                  new Class[] { PreparedStatement.class },
+                  (stmt, smethod, sargs) -> {
+                      if (!smethod.getName().equals("executeUpdate"))
+                        return null;
+                      if (sql.startsWith("set @title"))
+                        session.add("@title");
+                      else if (sql.startsWith("create temporary table "))
+                        session.add("staged");
+                      else if (sql.contains("@title") && !session.contains("@title"))
+                        throw new SQLException("Column 'title' cannot be null");
+                      else if (sql.startsWith("insert into staged") && !session.contains("staged"))
+                        throw new SQLException("Table 'staged' doesn't exist");
+                      return 1;
+                    });
+              });
+        });
+    List<String> sqls = Arrays.asList("insert into person values('Mark')",
+                                      "set @title = 'Mr'",
+                                      "create temporary table staged (id int)",
+                                      "insert into staged values(1)",
+                                      "insert into title values(@title)",
+                                      "insert into staged values(2)");
+    assertEquals("Every statement should run", 6, new Batch(sqls, ds).parallel(4).execute());
+    assertEquals("Session statements should keep the batch on one connection", 1, opened.get());
+  }
+
+  @Test public void testPlan() {
+    List<String> sqls = Arrays.asList("drop table if exists person",
+                                      "create table person(first varchar(255))",
+                                      "drop table if exists title",
+                                      "insert into person values('Mark')",
+                                      "create table title(title varchar(255))",
+                                      "insert into person select * from staff",
+                                      "insert into title values('Cat')");
+    List<List<List<Integer>>> stages = Batch.plan(sqls);
+    assertEquals("Barriers should split stages", 3, stages.size());
+    assertEquals("Tables should run in parallel lanes", 2, stages.get(0).size());
+    assertEquals("Lanes should keep statement order", Arrays.asList(0, 1, 3), stages.get(0).get(0));
+    assertEquals("Barriers should run alone", Arrays.asList(Arrays.asList(5)), stages.get(1));
+    assertEquals("Statements after barriers should follow", Arrays.asList(6), stages.get(2).get(0));
+  }
+
+  @Test public void testForeignKey() throws Exception {
+    Set<String> parents = ConcurrentHashMap.newKeySet();
+    DataSource ds = (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class[] { Connection.class },
+        (connection, cmethod, cargs) -> {
+            if (!cmethod.getName().equals("prepareStatement"))
+              return null;
+            String sql = (String)cargs[0];
+            return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+              new Class[] { PreparedStatement.class },
+              (stmt, smethod, sargs) -> {
+                  if (!smethod.getName().equals("executeUpdate"))
+                    return null;
+                  if (sql.startsWith("insert into parent values(")) {
+                    Thread.sleep(20);
+                    parents.add(sql.replaceAll("\\D", ""));
+                  }
+                  else if (sql.startsWith("insert into child values(") && !parents.contains(sql.replaceAll(".*, |\\D", "")))
+                    throw new SQLException("Cannot add or update a child row: a foreign key constraint fails");
+                  return 1;
+                });
+          }));
+    List<String> sqls = Arrays.asList("create table parent(id int primary key)",
+                                      "create table child(id int, parent int, foreign key (parent) references `Parent`(id))",
+                                      "insert into parent values(1)",
+                                      "insert into child values(1, 1)",
+                                      "insert into beer values(1)",
+                                      "insert into parent values(2)",
+                                      "insert into child values(2, 2)");
+    List<List<List<Integer>>> stages = Batch.plan(sqls);
+    assertEquals("Foreign keys should be barriers", Arrays.asList(Arrays.asList(1)), stages.get(1));
+    assertEquals("Tables related by a foreign key should share a lane", Arrays.asList(2, 3, 5, 6), stages.get(2).get(0));
+    assertEquals("Unrelated tables should run in parallel", Arrays.asList(4), stages.get(2).get(1));
+    assertEquals("Children should follow their parents", 7, new Batch(sqls, ds).parallel(4).execute());
+    assertTrue("Triggers should be serial",
+               Batch.isSerial("CREATE DEFINER=`root`@`localhost` TRIGGER audit AFTER INSERT ON beer FOR EACH ROW INSERT INTO log VALUES(1)"));
+    assertEquals("Unparseable references should make the batch one lane", 1,
+                 Batch.plan(Arrays.asList("insert into beer values(1)", "alter table beer add foreign key (style) references", "insert into style values(1)")).size());
+  }
+
+}
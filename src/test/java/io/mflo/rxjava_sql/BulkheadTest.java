@@ -0,0 +1,173 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Bulkhead</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class BulkheadTest {
+
+  private static final Logger log = LoggerFactory.getLogger(BulkheadTest.class);
+
+  private static DataSource fake() {
+    return fake(0);
+  }
+
+  private static DataSource fake(long executeMillis) {
+    PreparedStatement stmt = (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+      new Class[] { PreparedStatement.class },
+      (proxy, method, args) -> {
+          if (method.getName().equals("executeUpdate")) {
+            Thread.sleep(executeMillis);
+            return 1;
+          }
+          return null;
+        });
+    Connection connection = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+      new Class[] { Connection.class },
+      (proxy, method, args) -> method.getName().equals("prepareStatement")? stmt : null);
+    return (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> connection);
+  }
+
+  /*
+   * Get a connection on another thread, so that it is held by another caller
+   */
+  private static Connection hold(Bulkhead bulkhead) throws Exception {
+    Object[] held = new Object[1];
+    Thread other = new Thread(() -> {
+        try {
+          held[0] = bulkhead.getConnection(fake(), 0);
+        }
+        catch (Exception e) {
+          held[0] = e;
+        }
+      });
+    other.start();
+    other.join();
+    if (held[0] instanceof Exception)
+      throw (Exception)held[0];
+    return (Connection)held[0];
+  }
+
+  @Test public void testShed() throws Exception {
+    Bulkhead bulkhead = new Bulkhead(1).queue(0);
+    Connection connection = hold(bulkhead);
+    assertEquals("Caller should be admitted", 1, bulkhead.getActive());
+    try {
+      bulkhead.getConnection(fake(), 0);
+      fail("Caller beyond limit should be shed");
+    }
+    catch (SQLTransientConnectionException e) {
+      assertEquals("Rejection should be counted", 1, bulkhead.getRejected());
+    }
+    connection.close();
+    connection.close();
+    assertEquals("Admission should be released exactly once", 0, bulkhead.getActive());
+  }
+
+  @Test public void testWait() throws Exception {
+    Bulkhead bulkhead = new Bulkhead(1).maxWait(50, TimeUnit.MILLISECONDS);
+    Connection connection = hold(bulkhead);
+    long start = System.nanoTime();
+    try {
+      bulkhead.getConnection(fake(), 0);
+      fail("Caller should be shed at its deadline");
+    }
+    catch (SQLTransientConnectionException e) {
+      assertTrue("Caller should wait until its deadline", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+      assertEquals("Queue should be empty after shedding", 0, bulkhead.getQueued());
+    }
+    connection.close();
+  }
+
+  @Test public void testAdaptive() throws Exception {
+    Bulkhead bulkhead = new Bulkhead(4).adaptive(1, 8, 1);
+    try (Connection connection = bulkhead.getConnection(fake(10), 0)) {
+      connection.prepareStatement("UPDATE beer SET price = 1").executeUpdate();
+    }
+    assertEquals("Slow statements should shrink the limit", 3, bulkhead.getLimit());
+  }
+
+  @Test public void testHold() throws Exception {
+    Bulkhead bulkhead = new Bulkhead(4).adaptive(1, 8, 20);
+    try (Connection connection = bulkhead.getConnection(fake(0), 0)) {
+      connection.prepareStatement("UPDATE beer SET price = 1").executeUpdate();
+      Thread.sleep(50);
+    }
+    assertEquals("Holding a connection after a fast statement should not shrink the limit", 4, bulkhead.getLimit());
+  }
+
+  @Test public void testReentrant() throws Exception {
+    Bulkhead bulkhead = new Bulkhead(1).queue(0);
+    Connection outer = bulkhead.getConnection(fake(), 0);
+    Connection inner = bulkhead.getConnection(fake(), 0);
+    assertEquals("Holder should be admitted again beyond the limit", 2, bulkhead.getActive());
+    try {
+      hold(bulkhead);
+      fail("Other callers should still be limited");
+    }
+    catch (SQLTransientConnectionException e) {
+      assertEquals("Rejection should be counted", 1, bulkhead.getRejected());
+    }
+    inner.close();
+    outer.close();
+    assertEquals("Admissions should be released", 0, bulkhead.getActive());
+    hold(bulkhead).close();
+    Connection other = hold(bulkhead);
+    try {
+      bulkhead.getConnection(fake(), 0);
+      fail("Released holder should not keep its admission");
+    }
+    catch (SQLTransientConnectionException e) {
+      other.close();
+    }
+  }
+
+  @Test public void testCloseElsewhere() throws Exception {
+    Bulkhead bulkhead = new Bulkhead(1).queue(0);
+    Connection outer = bulkhead.getConnection(fake(), 0);
+    Thread closer = new Thread(() -> {
+        try {
+          outer.close();
+        }
+        catch (SQLException e) {
+          log.warn("Close failed: " + e.getMessage());
+        }
+      });
+    closer.start();
+    closer.join();
+    assertEquals("Admission should be released on another thread", 0, bulkhead.getActive());
+    Connection other = hold(bulkhead);
+    try {
+      bulkhead.getConnection(fake(), 0);
+      fail("Admission closed on another thread should not stay re-entrant");
+    }
+    catch (SQLTransientConnectionException e) {
+      other.close();
+    }
+    bulkhead.getConnection(fake(), 0).close();
+    assertEquals("Admissions should be released", 0, bulkhead.getActive());
+  }
+
+}
@@ -0,0 +1,91 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.math.BigDecimal;
+
+import java.sql.ResultSetMetaData;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Columns</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class ColumnsTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ColumnsTest.class);
+
+  private Columns columns;
+
+  @Before public void setUp() {
+    columns = new Columns();
+    for (int i = 0; i < 3000; i++) {
+      LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+      attributes.put("id", (i == 0)? null : (long)i);
+      attributes.put("title", (i % 2 == 0)? "Cat" : "Mr");
+      attributes.put("score", i / 2.0);
+      columns.append(new Result(attributes));
+    }
+    columns.freeze();
+  }
+
+  @Test public void testScan() {
+    assertEquals("All rows should be stored", 3000, columns.size());
+    assertEquals("Long column should scan as primitives", 2999L * 3000 / 2, columns.longs(0).sum());
+    assertEquals("Double column should scan as primitives", 1499.5 * 1500, columns.doubles(2).sum(), 0.001);
+    assertTrue("Nulls should be recorded", columns.isNull(0, columns.getColumn("id")));
+  }
+
+  @Test public void testRow() {
+    assertEquals("Row view should find dictionary values", "Mr", columns.row(2999).get("title"));
+    assertEquals("Row view should box primitive values", 2999L, columns.row(2999).get(1));
+    assertNull("Row view should return nulls", columns.row(0).get("id"));
+  }
+
+  @Test public void testWiden() {
+    Columns mixed = new Columns();
+    Object[] values = new Object[] { 1, 5000000000L, 2, new BigDecimal("1.5"), "x" };
+    for (Object value : values) {
+      LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+      attributes.put("value", value);
+      mixed.append(new Result(attributes));
+    }
+    assertEquals("Long should not be truncated", 5000000000L, mixed.get(1, 0));
+    assertEquals("Earlier values should survive widening", 1L, mixed.get(0, 0));
+    assertEquals("BigDecimal should be kept as an object", new BigDecimal("1.5"), mixed.get(3, 0));
+    assertEquals("Mixed types should be kept as objects", "x", mixed.get(4, 0));
+  }
+
+  @Test public void testEmpty() throws Exception {
+    ResultSetMetaData rsMetaData = (ResultSetMetaData)Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+      new Class[] { ResultSetMetaData.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getColumnCount":
+              return 2;
+            case "getColumnLabel":
+              return ((Integer)args[0] == 1)? "id" : "name";
+            case "getColumnClassName":
+              return ((Integer)args[0] == 1)? "java.lang.Long" : "java.lang.String";
+            default:
+              return null;
+          }
+        });
+    Columns empty = new Columns(rsMetaData);
+    empty.freeze();
+    assertEquals("Empty columns should be named from metadata", Arrays.asList("id", "name"), empty.getNames());
+    assertEquals("Empty columns should have no rows", 0, empty.size());
+  }
+
+}
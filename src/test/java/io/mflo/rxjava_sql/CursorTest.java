@@ -0,0 +1,71 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.ResultSet;
+
+import java.util.LinkedHashMap;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Cursor</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class CursorTest {
+
+  private static final Logger log = LoggerFactory.getLogger(CursorTest.class);
+
+  private static ResultSet fake(Object... row) {
+    return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class[] { ResultSet.class },
+      (proxy, method, args) -> {
+          Object value = row[(Integer)args[0] - 1];
+          switch (method.getName()) {
+            case "getInt":
+              return (value != null)? ((Number)value).intValue() : 0;
+            case "getObject":
+              return value;
+            default:
+              return null;
+          }
+        });
+  }
+
+  @Test public void testResultSet() {
+    Result.Schema schema = new Result.Schema(new String[] { "id", "name" });
+    Cursor cursor = new Cursor();
+    cursor.reset(fake(1, "Budweiser"), schema);
+    assertEquals("Cursor should read by name", "Budweiser", cursor.get("name"));
+    assertEquals("Cursor should read primitives", 1, cursor.getInt("id"));
+    Result copy = cursor.copy();
+    cursor.reset(fake(2, "Miller"), schema);
+    assertEquals("Cursor should move to the next row", "Miller", cursor.get(2));
+    assertEquals("Copies should be retained", "Budweiser", copy.get("name"));
+    cursor.invalidate();
+    try {
+      cursor.get("name");
+      fail("Cursor should be invalid after onNext");
+    }
+    catch (IllegalStateException e) { }
+  }
+
+  @Test public void testResult() {
+    Cursor cursor = new Cursor();
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    attributes.put("id", 3L);
+    attributes.put("name", "Coors");
+    cursor.reset(new Result(attributes));
+    assertEquals("Cursor should read merged results", "Coors", cursor.get("name"));
+    assertEquals("Cursor should read merged primitives", 3L, cursor.getLong(1));
+    assertTrue("Cursor should know its names", cursor.has("id"));
+  }
+
+}
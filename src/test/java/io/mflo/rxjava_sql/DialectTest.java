@@ -0,0 +1,60 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.DatabaseMetaData;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Dialect</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class DialectTest {
+
+  private static final Logger log = LoggerFactory.getLogger(DialectTest.class);
+
+  private static DatabaseMetaData metaData(String productName) {
+    return (DatabaseMetaData)Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+      new Class[] { DatabaseMetaData.class },
+      (proxy, method, args) -> method.getName().equals("getDatabaseProductName")? productName : null);
+  }
+
+  @Test public void testOf() throws Exception {
+    assertSame("MySQL should be recognized", Dialect.MYSQL, Dialect.of(metaData("MySQL")));
+    assertSame("MariaDB should be treated as MySQL", Dialect.MYSQL, Dialect.of(metaData("MariaDB")));
+    assertSame("PostgreSQL should be recognized", Dialect.POSTGRESQL, Dialect.of(metaData("PostgreSQL")));
+    assertSame("H2 should be recognized", Dialect.H2, Dialect.of(metaData("H2")));
+    assertSame("Derby should be recognized", Dialect.DERBY, Dialect.of(metaData("Apache Derby")));
+    assertSame("Unknown databases should default to MySQL", Dialect.MYSQL, Dialect.of(metaData("Unknown")));
+  }
+
+  @Test public void testPaginate() {
+    String sql = "SELECT * FROM beer ORDER BY id";
+    assertEquals("MySQL should paginate with LIMIT offset,count", sql + " LIMIT 20,10", Dialect.MYSQL.paginate(sql, 20, 10));
+    assertEquals("PostgreSQL should paginate with LIMIT and OFFSET", sql + " LIMIT 10 OFFSET 20", Dialect.POSTGRESQL.paginate(sql, 20, 10));
+    assertEquals("A zero offset should be omitted", sql + " LIMIT 10", Dialect.H2.paginate(sql, 0, 10));
+    assertEquals("Derby should paginate with OFFSET and FETCH", sql + " OFFSET 20 ROWS FETCH NEXT 10 ROWS ONLY", Dialect.DERBY.paginate(sql, 20, 10));
+    assertEquals("Derby should filter an empty window rather than fetch no rows", "SELECT * FROM (" + sql + ") AS empty WHERE 1 = 0", Dialect.DERBY.paginate(sql, 0, 0));
+  }
+
+  @Test public void testStrategies() {
+    assertTrue("Only MySQL should load from a stream", Dialect.MYSQL.isLoadInfile() && !Dialect.POSTGRESQL.isLoadInfile());
+    assertTrue("PostgreSQL should stream in a transaction", Dialect.POSTGRESQL.isStreamTransactional());
+    assertNull("Derby should not explain", Dialect.DERBY.explain("SELECT 1"));
+  }
+
+  @Test public void testQuote() {
+    assertEquals("MySQL should quote with backticks", "`pub`.`beer`", Dialect.MYSQL.quote("pub.beer"));
+    assertEquals("Others should quote with double quotes", "\"order\"", Dialect.POSTGRESQL.quote("order"));
+    assertEquals("Quoted names should be left as they are", "`pub.beer`", Dialect.MYSQL.quote("`pub.beer`"));
+  }
+
+}
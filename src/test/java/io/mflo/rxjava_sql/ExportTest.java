@@ -0,0 +1,191 @@
+package io.mflo.rxjava_sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import java.lang.reflect.Proxy;
+
+import java.math.BigDecimal;
+
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import java.util.LinkedHashMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+
+/**
+ * Unit tests for <code>Export</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class ExportTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ExportTest.class);
+
+  private static Result beer(long id,
+                             String name,
+                             Double abv) {
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    attributes.put("id", id);
+    attributes.put("name", name);
+    attributes.put("abv", abv);
+    return new Result(attributes);
+  }
+
+  @Test public void testCSV() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Export export = new Export(Channels.newChannel(out), Export.Format.CSV).bufferSize(1024);
+    Export.Encoder encoder = export.open();
+    encoder.append(beer(1, "Budweiser", 5.0));
+    encoder.append(beer(-20, "Bi\u00e8re \"Blonde\", Br\u00fcssel", null));
+    encoder.finish();
+    assertEquals("CSV should be quoted and escaped",
+                 "id,name,abv\r\n1,Budweiser,5.0\r\n-20,\"Bi\u00e8re \"\"Blonde\"\", Br\u00fcssel\",\r\n",
+                 new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals("Rows should be counted", 2, export.getRows());
+    assertEquals("Bytes should be counted", out.size(), export.getBytesWritten());
+  }
+
+  @Test public void testJSON() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Export export = new Export(Channels.newChannel(out), Export.Format.JSON).gzip(true);
+    Export.Encoder encoder = export.open();
+    for (int i = 0; i < 1000; i++)
+      encoder.append(beer(i, "Line\nbreak", null));
+    encoder.finish();
+    StringBuilder sb = new StringBuilder();
+    try (Reader in = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), StandardCharsets.UTF_8)) {
+      char[] chars = new char[4096];
+      int n;
+      while ((n = in.read(chars)) > 0)
+        sb.append(chars, 0, n);
+    }
+    assertTrue("JSON lines should be escaped", sb.toString().startsWith("{\"id\":0,\"name\":\"Line\\nbreak\",\"abv\":null}\n"));
+    assertEquals("Bytes encoded should be counted before compression", sb.length(), export.getBytes());
+    assertTrue("Output should be compressed", export.getBytesWritten() < export.getBytes());
+  }
+
+  @Test public void testNonFinite() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Export export = new Export(Channels.newChannel(out), Export.Format.JSON);
+    Export.Encoder encoder = export.open();
+    encoder.append(beer(1, "NaN", Double.NaN));
+    encoder.append(beer(2, "Infinity", Double.POSITIVE_INFINITY));
+    encoder.append(beer(3, "-Infinity", Double.NEGATIVE_INFINITY));
+    encoder.finish();
+    assertEquals("JSON should write non-finite numbers as null",
+                 "{\"id\":1,\"name\":\"NaN\",\"abv\":null}\n"
+                 + "{\"id\":2,\"name\":\"Infinity\",\"abv\":null}\n"
+                 + "{\"id\":3,\"name\":\"-Infinity\",\"abv\":null}\n",
+                 new String(out.toByteArray(), StandardCharsets.UTF_8));
+    out.reset();
+    export = new Export(Channels.newChannel(out), Export.Format.CSV).header(false);
+    encoder = export.open();
+    encoder.append(beer(1, "NaN", Double.NaN));
+    encoder.finish();
+    assertEquals("CSV should write non-finite numbers as they are", "1,NaN,NaN\r\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  /*
+   * Answer one row of typed columns, failing if a typed column is read as a string
+   */
+  private static DataSource typed() {
+    String[] names = new String[] { "price", "abv", "brewed", "bottled", "opens" };
+    int[] types = new int[] { Types.DECIMAL, Types.DOUBLE, Types.DATE, Types.TIMESTAMP, Types.TIME };
+    Timestamp bottled = Timestamp.valueOf("2015-06-30 23:59:58.123456789");
+    Object[] values = new Object[] { new BigDecimal("1E+3"), 5.5, Date.valueOf("2015-01-02"), bottled, Time.valueOf("09:30:00") };
+    ResultSetMetaData rsMetaData = (ResultSetMetaData)Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+      new Class[] { ResultSetMetaData.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getColumnCount":
+              return names.length;
+            case "getColumnLabel":
+            case "getColumnName":
+              return names[(Integer)args[0] - 1];
+            case "getColumnType":
+              return types[(Integer)args[0] - 1];
+            default:
+              return null;
+          }
+        });
+    return (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> Proxy.newProxyInstance(Connection.class.getClassLoader(),
+        new Class[] { Connection.class },
+        (connection, cmethod, cargs) -> !cmethod.getName().equals("prepareStatement")? null
+          : Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+              new Class[] { PreparedStatement.class },
+              (stmt, smethod, sargs) -> {
+                  if (!smethod.getName().equals("executeQuery"))
+                    return null;
+                  boolean[] read = new boolean[1];
+                  return Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class[] { ResultSet.class },
+                    (rs, rmethod, rargs) -> {
+                        switch (rmethod.getName()) {
+                          case "next":
+                            return read[0]? false : (read[0] = true);
+                          case "getMetaData":
+                            return rsMetaData;
+                          case "wasNull":
+                            return false;
+                          case "getString":
+                            fail("Typed columns should not be read as strings");
+                            return null;
+                          case "getDouble":
+                            return ((Number)values[(Integer)rargs[0] - 1]).doubleValue();
+                          default:
+                            return (rargs != null)? values[(Integer)rargs[0] - 1] : null;
+                        }
+                      });
+                })));
+  }
+
+  @Test public void testTyped() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Export export = new Export(Channels.newChannel(out), Export.Format.JSON);
+    new Query("SELECT * FROM beer", typed()).dialect(Dialect.MYSQL).export(export).toBlocking().single();
+    assertEquals("Typed columns should be encoded from their values",
+                 "{\"price\":1000,\"abv\":5.5,\"brewed\":\"2015-01-02\","
+                 + "\"bottled\":\"2015-06-30 23:59:58.123456789\",\"opens\":\"09:30:00\"}\n",
+                 new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test public void testResubscribe() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Export export = new Export(Channels.newChannel(out), Export.Format.CSV);
+    Observable<Export> exported = new Query("SELECT * FROM beer", typed()).dialect(Dialect.MYSQL).export(export);
+    exported.toBlocking().single();
+    String first = new String(out.toByteArray(), StandardCharsets.UTF_8);
+    out.reset();
+    exported.toBlocking().single();
+    assertEquals("Each subscription should export from the start", first, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertTrue("Each subscription should write its header", first.startsWith("price,abv,brewed,bottled,opens\r\n"));
+    assertEquals("Metrics should describe the last subscription", 1, export.getRows());
+  }
+
+}
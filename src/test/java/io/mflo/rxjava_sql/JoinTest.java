@@ -0,0 +1,133 @@
+package io.mflo.rxjava_sql;
+
+import java.io.ByteArrayInputStream;
+
+import java.lang.reflect.Proxy;
+
+import java.math.BigDecimal;
+
+import java.sql.ResultSet;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import rx.Observable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Join</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class JoinTest {
+
+  private static final Logger log = LoggerFactory.getLogger(JoinTest.class);
+
+  private static Result result(String first,
+                               String title) {
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    attributes.put("first", first);
+    attributes.put("title", title);
+    return new Result(attributes);
+  }
+
+  private static Result title(String title,
+                              String description) {
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    attributes.put("title", title);
+    attributes.put("description", description);
+    return new Result(attributes);
+  }
+
+  private Observable<Result> people = Observable.from(Arrays.asList(
+    result("Nobody", null), result("Lucky", "Cat"), result("Max", "Cat"), result("Mark", "Mr"), result("Lynn", "Ms")));
+
+  private Observable<Result> titles = Observable.from(Arrays.asList(
+    title("Cat", "I am a cat"), title("Mr", "I am a man"), title("Ms", "I am a woman")));
+
+  @Test public void testHash() {
+    List<Result> joined = new ArrayList<>();
+    new Join(people, titles).on("title").hash().subscribe((result) -> joined.add(result));
+    assertEquals("Hash join should match every titled person", 4, joined.size());
+    for (Result result : joined)
+      if (result.get("first").equals("Mark"))
+        assertEquals("Hash join should combine both sides", "I am a man", result.get("description"));
+  }
+
+  @Test public void testSpill() {
+    List<Result> joined = new ArrayList<>();
+    new Join(people, titles).on("title").budget(1).partitions(2).hash().subscribe((result) -> joined.add(result));
+    assertEquals("Spilled hash join should match every titled person", 4, joined.size());
+  }
+
+  @Test public void testMerge() {
+    List<Result> joined = new ArrayList<>();
+    new Join(people, titles).merge(new OrderBy.ASC("title")).subscribe((result) -> joined.add(result));
+    assertEquals("Merge join should match every titled person", 4, joined.size());
+    assertEquals("Merge join should preserve order", "Lucky", joined.get(0).get("first"));
+    assertEquals("Merge join should combine both sides", "I am a woman", joined.get(3).get("description"));
+  }
+
+  private static Result keyed(Object id,
+                              String name,
+                              Object value) {
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    attributes.put("id", id);
+    attributes.put(name, value);
+    return new Result(attributes);
+  }
+
+  @Test public void testRepartition() {
+    List<Result> builds = new ArrayList<>();
+    List<Result> probes = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      builds.add(keyed((long)i, "right", i));
+      probes.add(keyed((long)i, "left", i));
+    }
+    for (int i = 0; i < 30; i++)
+      builds.add(keyed(7L, "right", -i));
+    List<Result> joined = new ArrayList<>();
+    new Join(Observable.from(probes), Observable.from(builds)).on("id").budget(10).partitions(4)
+      .hash().subscribe((result) -> joined.add(result), (e) -> fail("Repartitioned join should not fail"));
+    assertEquals("Repartitioned join should match every row, including a skewed key", 230, joined.size());
+  }
+
+  @Test public void testKeys() {
+    List<Result> lefts = Arrays.asList(keyed(1L, "left", "a"), keyed(2, "left", "b"), keyed(3L, "left", "c"));
+    List<Result> rights = Arrays.asList(keyed(1.0, "right", "x"), keyed(new BigDecimal("2.00"), "right", "y"), keyed(3.5, "right", "z"));
+    List<Result> hashed = new ArrayList<>();
+    new Join(Observable.from(lefts), Observable.from(rights)).on("id").hash().subscribe((result) -> hashed.add(result));
+    List<Result> merged = new ArrayList<>();
+    new Join(Observable.from(lefts), Observable.from(rights)).merge(new OrderBy.ASC("id")).subscribe((result) -> merged.add(result));
+    assertEquals("Hash join should match numbers of different types by value", 2, hashed.size());
+    assertEquals("Hash and merge joins should agree on key equality", merged.size(), hashed.size());
+  }
+
+  @Test public void testSpillLob() throws Exception {
+    ResultSet rs = (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class[] { ResultSet.class },
+      (proxy, method, args) -> method.getName().equals("getBinaryStream")? new ByteArrayInputStream(new byte[] { 1, 2 }) : null);
+    try (Lob lob = Lob.of(rs, 1, Types.BLOB).spill()) {
+      List<Result> joined = new ArrayList<>();
+      new Join(Observable.just(keyed(1L, "left", "a"), keyed(2L, "left", "b")),
+               Observable.just(keyed(1L, "right", lob), keyed(2L, "right", null)))
+        .on("id").budget(1).partitions(2)
+        .hash().subscribe((result) -> joined.add(result), (e) -> fail("Spilled join should not fail on a Lob: " + e));
+      assertEquals("Spilled join should match every row", 2, joined.size());
+      for (Result result : joined)
+        if (result.get("left").equals("a"))
+          assertArrayEquals("Spilled Lob should be read into the partition", new byte[] { 1, 2 }, (byte[])result.get("right"));
+    }
+  }
+
+}
@@ -0,0 +1,204 @@
+package io.mflo.rxjava_sql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import java.lang.reflect.Proxy;
+
+import java.math.BigDecimal;
+
+import java.nio.charset.StandardCharsets;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import rx.Observable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Load</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class LoadTest {
+
+  private static final Logger log = LoggerFactory.getLogger(LoadTest.class);
+
+  private List<String> prepared;
+  private int created;
+  private DataSource ds;
+  private String streamed;
+  private int skipped;
+
+  private static List<Result> beers(int count) {
+    List<Result> results = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+      attributes.put("id", i);
+      attributes.put("name", "Beer " + i);
+      results.add(new Result(attributes));
+    }
+    return results;
+  }
+
+  @Before public void setUp() {
+    prepared = new ArrayList<>();
+    created = 0;
+    streamed = null;
+    skipped = 0;
+    AtomicInteger added = new AtomicInteger();
+    PreparedStatement stmt = (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+      new Class[] { PreparedStatement.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "addBatch":
+              added.incrementAndGet();
+              return null;
+            case "executeBatch":
+              int[] counts = new int[added.getAndSet(0)];
+              Arrays.fill(counts, 1);
+              return counts;
+            default:
+              return null;
+          }
+        });
+    Statement plain = (Statement)Proxy.newProxyInstance(Statement.class.getClassLoader(),
+      new Class[] { Statement.class },
+      (proxy, method, args) -> method.getName().equals("isWrapperFor")? false : null);
+    DatabaseMetaData metaData = (DatabaseMetaData)Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+      new Class[] { DatabaseMetaData.class },
+      (proxy, method, args) -> method.getName().equals("getDatabaseProductName")? "MySQL" : null);
+    Connection connection = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+      new Class[] { Connection.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "prepareStatement":
+              prepared.add((String)args[0]);
+              return stmt;
+            case "createStatement":
+              created++;
+              return plain;
+            case "getMetaData":
+              return metaData;
+            default:
+              return null;
+          }
+        });
+    ds = (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> connection);
+  }
+
+  /*
+   * Answer LOAD DATA LOCAL INFILE from the stream set by the MySQL hook,
+   * skipping rows with a warning as the server does
+   */
+  private DataSource infile() {
+    InputStream[] in = new InputStream[1];
+    int[] loaded = new int[1];
+    Statement stmt = (Statement)Proxy.newProxyInstance(com.mysql.jdbc.Statement.class.getClassLoader(),
+      new Class[] { com.mysql.jdbc.Statement.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "isWrapperFor":
+              return ((Class<?>)args[0]).isInstance(proxy);
+            case "unwrap":
+              return proxy;
+            case "setLocalInfileInputStream":
+              in[0] = (InputStream)args[0];
+              return null;
+            case "execute":
+              ByteArrayOutputStream out = new ByteArrayOutputStream();
+              byte[] bytes = new byte[256];
+              for (int n; (n = in[0].read(bytes, 0, bytes.length)) > 0; )
+                out.write(bytes, 0, n);
+              streamed = new String(out.toByteArray(), StandardCharsets.UTF_8);
+              loaded[0] = streamed.split("\n").length - skipped;
+              return false;
+            case "getUpdateCount":
+              return loaded[0];
+            case "getWarnings":
+              return (skipped > 0)? new SQLWarning("Duplicate entry '1' for key 'PRIMARY'") : null;
+            default:
+              return null;
+          }
+        });
+    DatabaseMetaData metaData = (DatabaseMetaData)Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+      new Class[] { DatabaseMetaData.class },
+      (proxy, method, args) -> method.getName().equals("getDatabaseProductName")? "MySQL" : null);
+    Connection connection = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+      new Class[] { Connection.class },
+      (proxy, method, args) -> method.getName().equals("createStatement")? stmt
+        : method.getName().equals("getMetaData")? metaData : null);
+    return (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> connection);
+  }
+
+  @Test public void testInfile() {
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    attributes.put("brewed", Date.valueOf("2015-01-02"));
+    attributes.put("bottled", Timestamp.valueOf("2015-06-30 23:59:58.1234"));
+    attributes.put("opens", Time.valueOf("09:30:00"));
+    attributes.put("price", new BigDecimal("1E+3"));
+    long total = new Load("beer", Observable.just(new Result(attributes)), infile()).execute().toBlocking().single();
+    assertEquals("Every row should be loaded", 1, total);
+    assertEquals("Temporal values should be formatted explicitly",
+                 "2015-01-02\t2015-06-30 23:59:58.1234\t09:30:00\t1000\n", streamed);
+  }
+
+  @Test public void testSkipped() {
+    skipped = 1;
+    try {
+      new Load("beer", Observable.from(beers(3)), infile()).execute().toBlocking().single();
+      fail("Rows skipped by LOAD DATA should fail the load");
+    }
+    catch (RuntimeException e) {
+      assertTrue("Failure should count the rows loaded", e.getCause().getMessage().contains("loaded 2 of 3 rows"));
+      assertTrue("Failure should carry the warnings", ((SQLException)e.getCause()).getNextException() instanceof SQLWarning);
+    }
+  }
+
+  @Test public void testBatch() {
+    List<Long> progress = new ArrayList<>();
+    new Load("beer", Observable.from(beers(25)), ds).infile(false).chunk(10)
+      .execute()
+      .subscribe((total) -> progress.add(total));
+    assertEquals("Progress should be reported per chunk", Arrays.asList(10L, 20L, 25L), progress);
+    assertEquals("Columns should be taken from the first Result", "INSERT INTO `beer` (`id`, `name`) VALUES (?, ?)", prepared.get(0));
+    assertEquals("Infile should not be tried when disabled", 0, created);
+  }
+
+  @Test public void testFallback() {
+    List<Long> progress = new ArrayList<>();
+    new Load("pub.beer", Observable.from(beers(25)), ds).chunk(10)
+      .execute()
+      .subscribe((total) -> progress.add(total), (e) -> fail("Load without an infile hook should not fail"));
+    assertEquals("Fallback should load every chunk", Arrays.asList(10L, 20L, 25L), progress);
+    assertEquals("Infile should be tried once, then given up", 1, created);
+    assertEquals("Fallback should insert into the quoted table", "INSERT INTO `pub`.`beer` (`id`, `name`) VALUES (?, ?)", prepared.get(0));
+  }
+
+}
@@ -0,0 +1,131 @@
+package io.mflo.rxjava_sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import java.lang.reflect.Proxy;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import java.util.Arrays;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Lob</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class LobTest {
+
+  private static final Logger log = LoggerFactory.getLogger(LobTest.class);
+
+  private static ResultSet rs(byte[] bytes,
+                              String chars) {
+    return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class[] { ResultSet.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getBinaryStream":
+              return (bytes != null)? new ByteArrayInputStream(bytes) : null;
+            case "getCharacterStream":
+              return (chars != null)? new StringReader(chars) : null;
+            default:
+              return null;
+          }
+        });
+  }
+
+  private static byte[] readAll(InputStream in) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int n; (n = in.read(buffer)) != -1; )
+      out.write(buffer, 0, n);
+    return out.toByteArray();
+  }
+
+  private static String readAll(Reader in) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    char[] buffer = new char[4096];
+    for (int n; (n = in.read(buffer)) != -1; )
+      sb.append(buffer, 0, n);
+    return sb.toString();
+  }
+
+  @Test public void testReadOnce() throws Exception {
+    Lob lob = Lob.of(rs(new byte[] { 1, 2, 3 }, null), 1, Types.BLOB);
+    assertArrayEquals("Lob should stream its bytes", new byte[] { 1, 2, 3 }, readAll(lob.getBinaryStream()));
+    try {
+      lob.getBinaryStream();
+      fail("Lob should not be read twice without spilling");
+    }
+    catch (SQLException e) {
+      assertTrue("Lob should explain how to read it again", e.getMessage().contains("spill"));
+    }
+    try {
+      lob.getCharacterStream();
+      fail("Binary Lob should not be read as characters");
+    }
+    catch (SQLException e) {
+      assertFalse("Binary Lob should not be character", lob.isCharacter());
+    }
+    assertNull("Null column should not be a Lob", Lob.of(rs(null, null), 1, Types.BLOB));
+  }
+
+  @Test public void testInvalidate() throws Exception {
+    Lob lob = Lob.of(rs(null, "text"), 1, Types.CLOB);
+    lob.invalidate();
+    assertFalse("Lob should be invalid once its row moves on", lob.isValid());
+    try {
+      lob.getCharacterStream();
+      fail("Invalid Lob should not be read");
+    }
+    catch (SQLException e) {
+      assertTrue("Lob should explain how to retain it", e.getMessage().contains("onNext"));
+    }
+    try {
+      lob.spill();
+      fail("Invalid Lob should not be spilled");
+    }
+    catch (SQLException e) {
+      assertFalse("Failed spill should leave the Lob invalid", lob.isValid());
+    }
+  }
+
+  @Test public void testSpill() throws Exception {
+    byte[] bytes = new byte[200000];
+    for (int i = 0; i < bytes.length; i++)
+      bytes[i] = (byte)i;
+    try (Lob lob = Lob.of(rs(bytes, null), 1, Types.BLOB).spill()) {
+      lob.invalidate();
+      assertTrue("Spilled Lob should outlive its row", lob.isValid());
+      assertArrayEquals("Spilled Lob should read every byte", bytes, readAll(lob.getBinaryStream()));
+      ReadableByteChannel channel = lob.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 1);
+      while (channel.read(buffer) > 0) { }
+      assertEquals("Spilled Lob should be read again", bytes.length, buffer.position());
+      assertTrue("Spilled Lob should be read again in order", Arrays.equals(bytes, Arrays.copyOf(buffer.array(), bytes.length)));
+    }
+    String chars = "Bi\u00e8re \u2603 ";
+    try (Lob lob = Lob.of(rs(null, chars), 1, Types.LONGVARCHAR).spill()) {
+      lob.invalidate();
+      assertEquals("Spilled character Lob should decode", chars, readAll(lob.getCharacterStream()));
+      assertEquals("Spilled character Lob should be read again", chars, readAll(lob.getCharacterStream()));
+    }
+  }
+
+}
@@ -0,0 +1,67 @@
+package io.mflo.rxjava_sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>OrderBy</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class OrderByTest {
+
+  private static final Logger log = LoggerFactory.getLogger(OrderByTest.class);
+
+  private static List<Result> names(String... names) {
+    List<Result> results = new ArrayList<>();
+    for (String name : names) {
+      LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+      attributes.put("name", name);
+      results.add(new Result(attributes));
+    }
+    return results;
+  }
+
+  private static List<Object> sorted(List<Result> results,
+                                     Comparator<Result> order) {
+    Collections.sort(results, order);
+    List<Object> names = new ArrayList<>();
+    for (Result result : results)
+      names.add(result.get("name"));
+    return names;
+  }
+
+  @Test public void testCollation() {
+    OrderBy[] byName = new OrderBy[] { new OrderBy.ASC("name") };
+    assertEquals("Strings should sort in binary order by default",
+                 Arrays.asList("Banana", "apple", "cherry"),
+                 sorted(names("cherry", "Banana", "apple"), OrderBy.comparator(byName)));
+    assertEquals("Strings should sort by the collation of the dialect",
+                 Arrays.asList("apple", "Banana", "cherry"),
+                 sorted(names("cherry", "Banana", "apple"), OrderBy.comparator(byName, Dialect.MYSQL.getCollation())));
+    OrderBy[] collated = new OrderBy[] { new OrderBy.DESC("name").collate(String.CASE_INSENSITIVE_ORDER) };
+    assertEquals("Collation of a clause should override that of the dialect",
+                 Arrays.asList("cherry", "Banana", "apple"),
+                 sorted(names("apple", "cherry", "Banana"), OrderBy.comparator(collated, null)));
+  }
+
+  @Test public void testNumbers() {
+    assertEquals("Numbers of different types should compare by value", 0, OrderBy.compare(1L, 1.0));
+    assertTrue("Infinity should be greater than any long", OrderBy.compare(Double.POSITIVE_INFINITY, Long.MAX_VALUE) > 0);
+    assertTrue("Negative infinity should be less than any int", OrderBy.compare(Integer.MIN_VALUE, Float.NEGATIVE_INFINITY) > 0);
+    assertTrue("NaN should compare without failing", OrderBy.compare(Double.NaN, 1L) > 0);
+  }
+
+}
@@ -0,0 +1,217 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Poll</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class PollTest {
+
+  private static final Logger log = LoggerFactory.getLogger(PollTest.class);
+
+  // rows of (id, updated), as a table would hold them
+  private static final int[][] ROWS = new int[][] { { 1, 10 }, { 2, 10 }, { 3, 10 }, { 4, 20 }, { 5, 20 } };
+
+  private static final Pattern LIMIT = Pattern.compile("LIMIT (\\d+),(\\d+)");
+
+  private List<TreeMap<Integer,Object>> bound;
+  private AtomicInteger connections;
+  private AtomicInteger closed;
+  private RuntimeException failure;
+
+  /*
+   * Answer a polling statement from ROWS: the parameters of the poll are the
+   * last one, or the last three with a key, of those bound
+   */
+  private ResultSet execute(String sql,
+                            TreeMap<Integer,Object> params,
+                            int watermark) {
+    List<int[]> rows = new ArrayList<>();
+    List<Object> values = new ArrayList<>(params.values());
+    for (int[] row : ROWS) {
+      if (sql.contains(" WHERE updated >= ")) {
+        int from = (Integer)values.get(values.size() - 3);
+        Integer key = (Integer)values.get(values.size() - 1);
+        if ((row[1] < from) || ((row[1] == from) && ((key == null) || (row[0] <= key))))
+          continue;
+      }
+      else if (sql.matches(".* AS polled WHERE \\w+ > \\?.*")) {
+        int from = (Integer)values.get(values.size() - 1);
+        if (row[watermark] <= from)
+          continue;
+      }
+      rows.add(row);
+    }
+    Matcher m = LIMIT.matcher(sql);
+    assertTrue("Poll should paginate", m.find());
+    Iterator<int[]> cursor = rows.subList(0, Math.min(rows.size(), Integer.parseInt(m.group(2)))).iterator();
+    int[][] current = new int[1][];
+    ResultSetMetaData rsMetaData = (ResultSetMetaData)Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+      new Class[] { ResultSetMetaData.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getColumnCount":
+              return 2;
+            case "getColumnLabel":
+            case "getColumnName":
+              return ((Integer)args[0] == 1)? "id" : "updated";
+            case "getColumnType":
+              return Types.INTEGER;
+            default:
+              return null;
+          }
+        });
+    return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class[] { ResultSet.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "next":
+              current[0] = cursor.hasNext()? cursor.next() : null;
+              return current[0] != null;
+            case "getMetaData":
+              return rsMetaData;
+            case "getObject":
+              return current[0][(Integer)args[0] - 1];
+            default:
+              return null;
+          }
+        });
+  }
+
+  private DataSource table(int watermark) {
+    return (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> {
+          if (!method.getName().equals("getConnection"))
+            return null;
+          connections.incrementAndGet();
+          return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class[] { Connection.class },
+            (connection, cmethod, cargs) -> {
+                if (cmethod.getName().equals("close"))
+                  closed.incrementAndGet();
+                if (!cmethod.getName().equals("prepareStatement"))
+                  return null;
+                String sql = (String)cargs[0];
+                TreeMap<Integer,Object> params = new TreeMap<>();
+                synchronized (this) {
+                  bound.add(params);
+                }
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                  new Class[] { PreparedStatement.class },
+                  (stmt, smethod, sargs) -> {
+                      switch (smethod.getName()) {
+                        case "setObject":
+                          params.put((Integer)sargs[0], sargs[1]);
+                          return null;
+                        case "executeQuery":
+                          if (failure != null)
+                            throw failure;
+                          return execute(sql, params, watermark);
+                        case "toString":
+                          return sql;
+                        default:
+                          return null;
+                      }
+                    });
+              });
+        });
+  }
+
+  private List<Object> ids(Poll poll,
+                           int count) {
+    List<Object> ids = new ArrayList<>();
+    for (Result result : poll.interval(1, 10, TimeUnit.MILLISECONDS).execute().take(count).toList().toBlocking().single())
+      ids.add(result.get("id"));
+    return ids;
+  }
+
+  /*
+   * Wait briefly for the connections to be closed on the polling thread
+   */
+  private int closed() throws InterruptedException {
+    for (long deadline = System.currentTimeMillis() + 1000; (closed.get() < connections.get()) && (System.currentTimeMillis() < deadline); )
+      Thread.sleep(5);
+    return closed.get();
+  }
+
+  @Before public void setUp() {
+    bound = new ArrayList<>();
+    connections = new AtomicInteger();
+    closed = new AtomicInteger();
+    failure = null;
+  }
+
+  @Test public void testKey() {
+    Query query = new Query("SELECT id, updated FROM beer", table(1)).dialect(Dialect.MYSQL).limit(0, 2);
+    assertEquals("Ties on the watermark should not be lost across windows",
+                 Arrays.asList(1, 2, 3, 4, 5), ids(query.poll("updated").key("id"), 5));
+    assertEquals("Poll should resume beyond a checkpointed watermark and key",
+                 Arrays.asList(3, 4, 5), ids(query.poll("updated").key("id").from(10, 2), 3));
+  }
+
+  @Test public void testSubscriptions() {
+    Poll poll = new Query("SELECT id, updated FROM beer", table(0)).dialect(Dialect.MYSQL).limit(0, 2).poll("id");
+    assertEquals("First subscription should start from the first row", Arrays.asList(1, 2, 3), ids(poll, 3));
+    assertEquals("Second subscription should not start from the first one's position", Arrays.asList(1, 2, 3), ids(poll, 3));
+    assertNull("Poll should not be advanced by its subscriptions", poll.getWatermark());
+  }
+
+  @Test public void testParameters() {
+    Query query = new Query("SELECT id, updated FROM beer WHERE name <> '?' AND style = ?", table(0))
+      .dialect(Dialect.MYSQL).limit(0, 2).parameters("lager");
+    assertEquals("Poll should bind its watermark after positional parameters",
+                 Arrays.asList(1, 2, 3, 4), ids(query.poll("id"), 4));
+    for (TreeMap<Integer,Object> params : bound)
+      assertEquals("Positional parameter should not be overwritten", "lager", params.get(1));
+  }
+
+  @Test public void testConnection() throws InterruptedException {
+    Poll poll = new Query("SELECT id, updated FROM beer", table(0)).dialect(Dialect.MYSQL).limit(0, 2).poll("id");
+    assertEquals("Poll should drain the backlog", Arrays.asList(1, 2, 3, 4, 5), ids(poll, 5));
+    assertEquals("Poll should hold its connection while draining a backlog", 1, connections.get());
+    assertEquals("Poll should release its connection on unsubscription", 1, closed());
+  }
+
+  @Test public void testFailure() throws InterruptedException {
+    failure = new IllegalStateException("broken");
+    Poll poll = new Query("SELECT id, updated FROM beer", table(0)).dialect(Dialect.MYSQL).limit(0, 2).poll("id");
+    try {
+      ids(poll, 1);
+      fail("Poll should terminate with the failure of a tick");
+    }
+    catch (IllegalStateException e) {
+      assertSame("Poll should report the failure of a tick", failure, e);
+    }
+    assertEquals("Poll should release its connection on failure", connections.get(), closed());
+  }
+
+}
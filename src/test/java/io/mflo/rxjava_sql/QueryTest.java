@@ -88,4 +88,22 @@ public class QueryTest {
         });
   }
 
+  @Test public void testCount() {
+    sql.query("select * from person where title = ?")
+      .parameters("Cat")
+      .count()
+      .subscribe((count) -> {
+          assertEquals("Count should be computed server-side", 2L, (long)count);
+        });
+  }
+
+  @Test public void testExists() {
+    sql.query("select * from person where title = ?")
+      .parameters("Dog")
+      .exists()
+      .subscribe((exists) -> {
+          assertFalse("Exists should be false when nothing matches", exists);
+        });
+  }
+
 }
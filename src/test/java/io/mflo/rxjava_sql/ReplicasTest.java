@@ -0,0 +1,101 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Replicas</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class ReplicasTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ReplicasTest.class);
+
+  private static DataSource fake(String name,
+                                 boolean healthy) {
+    PreparedStatement stmt = (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+      new Class[] { PreparedStatement.class },
+      (proxy, method, args) -> method.getName().equals("executeUpdate")? 1 : null);
+    Connection connection = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+      new Class[] { Connection.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getCatalog":
+              return name;
+            case "prepareStatement":
+              return stmt;
+            default:
+              return null;
+          }
+        });
+    return (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> {
+          if (method.getName().equals("isWrapperFor"))
+            return false;
+          if (!healthy)
+            throw new SQLException(name + " is down");
+          return connection;
+        });
+  }
+
+  @Test public void testRoundRobin() throws Exception {
+    Replicas replicas = new Replicas(fake("primary", true), fake("r1", true), fake("r2", true));
+    String first = replicas.getConnection().getCatalog();
+    String second = replicas.getConnection().getCatalog();
+    assertTrue("Reads should go to replicas", first.startsWith("r") && second.startsWith("r"));
+    assertFalse("Round robin should alternate replicas", first.equals(second));
+  }
+
+  @Test public void testEjection() throws Exception {
+    Replicas replicas = new Replicas(fake("primary", true), fake("r1", false), fake("r2", true));
+    for (int i = 0; i < 4; i++)
+      assertEquals("Failing replica should be skipped", "r2", replicas.getConnection().getCatalog());
+    assertEquals("Failing replica should be ejected", 1, replicas.getHealthy());
+  }
+
+  @Test public void testFallback() throws Exception {
+    Replicas replicas = new Replicas(fake("primary", true), fake("r1", false));
+    assertEquals("Reads should fall back to primary", "primary", replicas.getConnection().getCatalog());
+  }
+
+  @Test public void testReadYourWrites() throws Exception {
+    Replicas replicas = new Replicas(fake("primary", true), fake("r1", true)).readYourWrites(60000);
+    assertEquals("Reads should go to replica before any write", "r1", replicas.getConnection().getCatalog());
+    try (Connection connection = replicas.getWriter().getConnection()) {
+      connection.prepareStatement("SELECT 1").executeQuery();
+    }
+    assertEquals("Reads should stay on replica after reading from the primary", "r1", replicas.getConnection().getCatalog());
+    try (Connection connection = replicas.getWriter().getConnection()) {
+      connection.prepareStatement("UPDATE beer SET price = 1").executeUpdate();
+    }
+    assertEquals("Reads should go to primary after a write", "primary", replicas.getConnection().getCatalog());
+  }
+
+  @Test public void testUnwrap() throws Exception {
+    Replicas replicas = new Replicas(fake("primary", true), fake("r1", true));
+    assertSame("Replicas should unwrap to itself", replicas, replicas.unwrap(DataSource.class));
+    try {
+      replicas.unwrap(Runnable.class);
+      fail("Unwrapping to an unrelated interface should fail");
+    }
+    catch (SQLException e) {
+      assertFalse("Replicas should not wrap an unrelated interface", replicas.isWrapperFor(Runnable.class));
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+package io.mflo.rxjava_sql;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Result</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class ResultTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ResultTest.class);
+
+  private Result base;
+
+  @Before public void setUp() {
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    attributes.put("id", 1);
+    attributes.put("name", "Budweiser");
+    base = new Result(attributes);
+  }
+
+  @Test public void testDeltas() {
+    Map<String,Object> deltas = new HashMap<>();
+    deltas.put("name", "Bud Light");
+    deltas.put("abv", 4.2);
+    Result derived = new Result(base, deltas);
+    assertEquals("Deltas should replace values", "Bud Light", derived.get("name"));
+    assertEquals("Unchanged values should be shared", 1, derived.get("id"));
+    assertEquals("Original should not be changed", "Budweiser", base.get("name"));
+    assertFalse("Original should not gain names", base.has("abv"));
+    assertEquals("New names should follow in ordinal sequence", 4.2, derived.get(3));
+    assertEquals("Replaced names should keep their ordinal", "Bud Light", derived.get(2));
+    assertEquals("Elements should include new names", 3, derived.getElements().size());
+  }
+
+  @Test public void testDerivedFromDerived() {
+    Map<String,Object> first = new HashMap<>();
+    first.put("name", "Bud Light");
+    Map<String,Object> second = new HashMap<>();
+    second.put("id", 2);
+    Result once = new Result(base, first);
+    Result twice = new Result(once, second);
+    assertEquals("Deltas should accumulate", "Bud Light", twice.get("name"));
+    assertEquals("Deltas should accumulate", 2, twice.get("id"));
+    assertEquals("Intermediate should not be changed", 1, once.get("id"));
+    assertArrayEquals("Values should flatten in ordinal sequence", new Object[] { 2, "Bud Light" }, twice.toArray());
+  }
+
+  @Test public void testDuplicateLabels() throws Exception {
+    Result joined = new Result(new Result.Schema(new String[] { "id", "name", "id" }), new Object[] { 1, "Budweiser", 7 });
+    assertEquals("Ordinals should reach each column that shares a label", 1, joined.get(1));
+    assertEquals("Ordinals should reach each column that shares a label", 7, joined.get(3));
+    assertEquals("Elements should agree with values", joined.toArray().length, joined.getElements().size());
+    Map<String,Object> deltas = new HashMap<>();
+    deltas.put("abv", 5.0);
+    Result derived = new Result(joined, deltas);
+    assertArrayEquals("Derived values should keep every column", new Object[] { 1, "Budweiser", 7, 5.0 }, derived.toArray());
+    assertEquals("Elements should agree with values", 4, derived.getElements().size());
+    assertEquals("Names added by deltas should follow every column", 5.0, derived.get(4));
+    try (RowFile file = new RowFile("rxjava-sql-test", new File(System.getProperty("java.io.tmpdir")))) {
+      file.write(derived);
+      List<Result> read = new ArrayList<>();
+      file.read((result) -> read.add(result));
+      assertArrayEquals("Results with duplicate labels should spill", derived.toArray(), read.get(0).toArray());
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Shards</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class ShardsTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ShardsTest.class);
+
+  private static DataSource fake() {
+    return (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class }, (proxy, method, args) -> null);
+  }
+
+  private static Result result(String name,
+                               Object value) {
+    LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+    attributes.put(name, value);
+    return new Result(attributes);
+  }
+
+  @Test public void testRoute() {
+    Shards shards = new Shards(fake(), fake(), fake()).key("id").key(1);
+    Map<String,Object> named = new HashMap<>();
+    named.put("id", 7L);
+    Map<String,Object> positional = new HashMap<>();
+    positional.put(Parameters.POSITIONAL, new Object[] { 7 });
+    assertSame("Named and positional keys should route alike", shards.route(named), shards.route(positional));
+    assertSame("Shard key should route by value", shards.getShards().get(7 % 3), shards.route(named));
+    assertNull("Unbound shard key should not route", shards.route(new HashMap<>()));
+  }
+
+  @Test public void testComparator() {
+    List<Result> results = new ArrayList<>();
+    results.add(result("x", 2));
+    results.add(result("x", null));
+    results.add(result("x", 3L));
+    results.add(result("x", 1));
+    Collections.sort(results, OrderBy.comparator(new OrderBy[] { new OrderBy.DESC("t.x") }));
+    assertEquals("Merge order should follow order by", 3L, results.get(0).get("x"));
+    assertEquals("Merge order should follow order by", 1, results.get(2).get("x"));
+    assertNull("Nulls should sort last when descending", results.get(3).get("x"));
+  }
+
+}
@@ -0,0 +1,127 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>SlowLog</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class SlowLogTest {
+
+  private static final Logger log = LoggerFactory.getLogger(SlowLogTest.class);
+
+  private static final long MS = 1000000;
+
+  private List<SlowLog.Entry> entries;
+  private SlowLog slowLog;
+
+  @Before public void setUp() {
+    entries = new ArrayList<>();
+    slowLog = new SlowLog((entry) -> entries.add(entry)).threshold(100).explains(0);
+  }
+
+  @Test public void testThreshold() {
+    slowLog.record(null, null, "select 1", null, new HashMap<>(), 1, 99 * MS);
+    assertEquals("Fast statements should not be published", 0, entries.size());
+    slowLog.record(null, null, "select 1", null, new HashMap<>(), 1, 100 * MS);
+    assertEquals("Slow statements should be published", 1, entries.size());
+    assertEquals("Entry should carry timing", 100, entries.get(0).getMillis());
+    assertNull("Entry should not be explained when explains are disabled", entries.get(0).getPlan());
+  }
+
+  @Test public void testRedact() {
+    slowLog.redact("password", "2");
+    Map<String,Object> named = new HashMap<>();
+    named.put("user", "mflo");
+    named.put("password", "beerhunter");
+    slowLog.record(null, null, "select * from users where user = ? and password = ?", null, named, 1, 500 * MS);
+    Map<String,Object> positional = new HashMap<>();
+    positional.put(Parameters.POSITIONAL, new Object[] { "mflo", "beerhunter" });
+    slowLog.record(null, null, "select * from users where user = ? and password = ?", null, positional, 1, 500 * MS);
+    for (SlowLog.Entry entry : entries)
+      assertFalse("Redacted parameters should not be published", entry.toString().contains("beerhunter"));
+    assertEquals("Other parameters should be published", "mflo", entries.get(1).getParameters().get("1"));
+  }
+
+  @Test public void testDialect() throws Exception {
+    List<String> prepared = new ArrayList<>();
+    ResultSet rs = (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class[] { ResultSet.class },
+      (proxy, method, args) -> method.getName().equals("next")? false : null);
+    PreparedStatement stmt = (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+      new Class[] { PreparedStatement.class },
+      (proxy, method, args) -> method.getName().equals("executeQuery")? rs : null);
+    Connection connection = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+      new Class[] { Connection.class },
+      (proxy, method, args) -> {
+          if (method.getName().equals("getMetaData"))
+            fail("Configured dialect should not be chosen from metadata");
+          if (method.getName().equals("prepareStatement"))
+            prepared.add((String)args[0]);
+          return method.getName().equals("prepareStatement")? stmt : null;
+        });
+    DataSource ds = (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> connection);
+    Dialect analyze = new Dialect() {
+        @Override public boolean accepts(String productName) {
+          return false;
+        }
+        @Override public String explain(String sql) {
+          return "EXPLAIN ANALYZE " + sql;
+        }
+      };
+    CountDownLatch published = new CountDownLatch(1);
+    new SlowLog((entry) -> published.countDown()).threshold(100)
+      .record(ds, analyze, "select 1", (explain) -> { }, new HashMap<>(), 1, 100 * MS);
+    assertTrue("Slow statement should be published", published.await(5, TimeUnit.SECONDS));
+    assertEquals("Slow statement should be explained in the configured dialect", "EXPLAIN ANALYZE select 1", prepared.get(0));
+  }
+
+  @Test public void testConnect() {
+    ResultSetMetaData rsMetaData = (ResultSetMetaData)Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+      new Class[] { ResultSetMetaData.class },
+      (proxy, method, args) -> method.getName().equals("getColumnCount")? 0 : null);
+    ResultSet rs = (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class[] { ResultSet.class },
+      (proxy, method, args) -> method.getName().equals("next")? false : method.getName().equals("getMetaData")? rsMetaData : null);
+    PreparedStatement stmt = (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+      new Class[] { PreparedStatement.class },
+      (proxy, method, args) -> method.getName().equals("executeQuery")? rs : null);
+    Connection connection = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+      new Class[] { Connection.class },
+      (proxy, method, args) -> method.getName().equals("prepareStatement")? stmt : null);
+    DataSource ds = (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> {
+          Thread.sleep(150);
+          return connection;
+        });
+    new Query("SELECT 1", ds).dialect(Dialect.MYSQL).slowLog(slowLog).execute().toList().toBlocking().single();
+    assertEquals("Waiting for a connection should not make a window slow", 0, entries.size());
+  }
+
+}
@@ -0,0 +1,88 @@
+package io.mflo.rxjava_sql;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.math.BigDecimal;
+
+import java.nio.file.Files;
+
+import java.sql.Timestamp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import rx.Observable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>Spool</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class SpoolTest {
+
+  private static final Logger log = LoggerFactory.getLogger(SpoolTest.class);
+
+  private static Observable<Result> results(int count) {
+    List<Result> results = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      LinkedHashMap<String,Object> attributes = new LinkedHashMap<>();
+      attributes.put("id", i);
+      attributes.put("name", (i % 2 == 0)? "Lucky" : null);
+      attributes.put("amount", new BigDecimal("12.34"));
+      attributes.put("at", new Timestamp(i * 1000L));
+      results.add(new Result(attributes));
+    }
+    return Observable.from(results);
+  }
+
+  @Test public void testReplay() {
+    try (Spool spool = new Spool(results(100)).threshold(10)) {
+      for (int pass = 0; pass < 2; pass++) {
+        List<Result> replayed = new ArrayList<>();
+        spool.replay().subscribe((result) -> replayed.add(result));
+        assertEquals("Spool should replay every Result", 100, replayed.size());
+        assertEquals("Spilled Results should decode in order", 99, replayed.get(99).get("id"));
+        assertNull("Spilled Results should decode nulls", replayed.get(99).get("name"));
+        assertEquals("Spilled Results should decode decimals", new BigDecimal("12.34"), replayed.get(50).get("amount"));
+        assertEquals("Spilled Results should decode timestamps", new Timestamp(50000L), replayed.get(50).get("at"));
+      }
+    }
+  }
+
+  @Test public void testRetry() throws Exception {
+    File directory = Files.createTempDirectory("spool").toFile();
+    AtomicInteger attempts = new AtomicInteger();
+    Observable<Result> flaky = Observable.defer(() -> (attempts.incrementAndGet() == 1)?
+      results(50).concatWith(Observable.error(new IOException("Connection reset"))) :
+      results(100));
+    try (Spool spool = new Spool(flaky).threshold(10).directory(directory)) {
+      Throwable[] failure = new Throwable[1];
+      spool.replay().subscribe((result) -> { }, (e) -> failure[0] = e);
+      assertNotNull("Failed fill should be reported", failure[0]);
+      assertEquals("Failed fill should delete its file", 0, directory.list().length);
+      List<Result> replayed = new ArrayList<>();
+      spool.replay().subscribe((result) -> replayed.add(result));
+      assertEquals("Retry should not repeat Results", 100, replayed.size());
+      assertEquals("Retry should count Results once", 100, spool.size());
+      spool.close();
+      failure[0] = null;
+      spool.replay().subscribe((result) -> fail("Closed Spool should not replay"), (e) -> failure[0] = e);
+      assertTrue("Closed Spool should fail to replay", failure[0] instanceof IllegalStateException);
+    }
+    finally {
+      directory.delete();
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+package io.mflo.rxjava_sql;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests for <code>WriteBehind</code>
+ *
+ * @author      http://mflo.io
+ * @version     0.0.1
+ */
+
+public class WriteBehindTest {
+
+  private static final Logger log = LoggerFactory.getLogger(WriteBehindTest.class);
+
+  private AtomicInteger added;
+  private List<Integer> batches;
+  private int reported;
+  private DataSource ds;
+
+  @Before public void setUp() {
+    added = new AtomicInteger();
+    batches = new ArrayList<>();
+    reported = 1;
+    PreparedStatement stmt = (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+      new Class[] { PreparedStatement.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "addBatch":
+              added.incrementAndGet();
+              return null;
+            case "executeBatch":
+              int[] counts = new int[added.getAndSet(0)];
+              Arrays.fill(counts, reported);
+              synchronized (batches) {
+                batches.add(counts.length);
+              }
+              return counts;
+            default:
+              return null;
+          }
+        });
+    Connection connection = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+      new Class[] { Connection.class },
+      (proxy, method, args) -> method.getName().equals("prepareStatement")? stmt : null);
+    ds = (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+      new Class[] { DataSource.class },
+      (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "DataSource@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+              return connection;
+          }
+        });
+  }
+
+  @Test public void testFlush() throws Exception {
+    WriteBehind writeBehind = new WriteBehind().maxDelay(1, TimeUnit.HOURS);
+    List<Integer> counts = new ArrayList<>();
+    for (int i = 0; i < 5; i++)
+      writeBehind.enqueue(ds, null, "insert into beer values(?)", (stmt) -> stmt.setInt(1, 0)).subscribe((count) -> counts.add(count));
+    assertEquals("Updates should be buffered", 5, writeBehind.getPending());
+    writeBehind.flush();
+    assertEquals("Updates should be coalesced into one batch", 1, batches.size());
+    assertEquals("Every Update should be in the batch", 5, (int)batches.get(0));
+    assertEquals("Every caller should see its count", 5, counts.size());
+    assertEquals("Buffer should be empty after flush", 0, writeBehind.getPending());
+  }
+
+  @Test public void testReject() throws Exception {
+    WriteBehind writeBehind = new WriteBehind().maxDelay(1, TimeUnit.HOURS).capacity(1).block(false);
+    List<Throwable> errors = new ArrayList<>();
+    writeBehind.enqueue(ds, null, "insert into beer values(?)", (stmt) -> stmt.setInt(1, 0));
+    writeBehind.enqueue(ds, null, "insert into beer values(?)", (stmt) -> stmt.setInt(1, 1)).subscribe((count) -> { }, (e) -> errors.add(e));
+    assertEquals("Updates beyond capacity should be rejected", 1, writeBehind.getRejected());
+    assertEquals("Rejected callers should see an error", 1, errors.size());
+    writeBehind.flush();
+  }
+
+  @Test public void testNoInfo() throws Exception {
+    reported = Statement.SUCCESS_NO_INFO;
+    WriteBehind writeBehind = new WriteBehind().maxDelay(1, TimeUnit.HOURS);
+    List<Integer> counts = new ArrayList<>();
+    for (int i = 0; i < 2; i++)
+      writeBehind.enqueue(ds, null, "insert into beer values(?)", (stmt) -> stmt.setInt(1, 0)).subscribe((count) -> counts.add(count));
+    writeBehind.flush();
+    assertEquals("Success without a count should be one row", Arrays.asList(1, 1), counts);
+  }
+
+  @Test public void testBulkhead() throws Exception {
+    WriteBehind writeBehind = new WriteBehind().maxDelay(1, TimeUnit.HOURS);
+    Bulkhead bulkhead = new Bulkhead(1);
+    writeBehind.enqueue(ds, bulkhead, "insert into beer values(?)", (stmt) -> stmt.setInt(1, 0));
+    writeBehind.enqueue(ds, null, "insert into beer values(?)", (stmt) -> stmt.setInt(1, 0));
+    writeBehind.flush();
+    assertEquals("Updates in different categories should be batched apart", 2, batches.size());
+    assertEquals("Batches should be admitted by their bulkhead", 1, bulkhead.getAdmitted());
+    assertEquals("Batches should release their bulkhead", 0, bulkhead.getActive());
+  }
+
+}